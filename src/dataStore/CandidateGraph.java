@@ -0,0 +1,107 @@
+package dataStore;
+
+import java.util.Arrays;
+
+/**
+ * Immutable adjacency of the candidate graph in compressed rows. Vertices
+ * get dense ids in increasing cell order. The neighbors of vertex v are
+ * neighbors[offsets[v]] to neighbors[offsets[v + 1] - 1], in increasing
+ * order, and directedEdges holds the id of the directed edge from v to each
+ * (ids as in EdgeIndex, so the edge back is that id ^ 1). The from vertex
+ * of directed edge e is edgeVertices[e] and its to vertex edgeVertices[e ^ 1].
+ *
+ * @author yaw
+ */
+public class CandidateGraph {
+
+    private int[] vertexCells;
+    private int[] offsets;
+    private int[] neighbors;
+    private int[] directedEdges;
+    private int[] edgeVertices;
+
+    public CandidateGraph(int[] graphVertices, EdgeIndex edgeIndex) {
+        vertexCells = graphVertices.clone();
+        Arrays.sort(vertexCells);
+        int numVertices = vertexCells.length;
+
+        // Vertices of both ends of every edge, in directed edge order.
+        Edge[] edges = edgeIndex.getEdges();
+        edgeVertices = new int[edges.length * 2];
+        for (int k = 0; k < edges.length; k++) {
+            edgeVertices[2 * k] = getVertex(edges[k].v1);
+            edgeVertices[2 * k + 1] = getVertex(edges[k].v2);
+        }
+
+        offsets = new int[numVertices + 1];
+        for (int vertex : edgeVertices) {
+            offsets[vertex + 1]++;
+        }
+        for (int v = 0; v < numVertices; v++) {
+            offsets[v + 1] += offsets[v];
+        }
+        neighbors = new int[edgeVertices.length];
+        directedEdges = new int[edgeVertices.length];
+        int[] fill = Arrays.copyOf(offsets, numVertices);
+        for (int e = 0; e < edgeVertices.length; e++) {
+            int slot = fill[edgeVertices[e]]++;
+            neighbors[slot] = edgeVertices[e ^ 1];
+            directedEdges[slot] = e;
+        }
+
+        // Rows in neighbor order; they are short, so insertion sort.
+        for (int v = 0; v < numVertices; v++) {
+            for (int i = offsets[v] + 1; i < offsets[v + 1]; i++) {
+                int neighbor = neighbors[i];
+                int edge = directedEdges[i];
+                int j = i - 1;
+                while (j >= offsets[v] && neighbors[j] > neighbor) {
+                    neighbors[j + 1] = neighbors[j];
+                    directedEdges[j + 1] = directedEdges[j];
+                    j--;
+                }
+                neighbors[j + 1] = neighbor;
+                directedEdges[j + 1] = edge;
+            }
+        }
+    }
+
+    public int getNumVertices() {
+        return vertexCells.length;
+    }
+
+    // Vertex id of a cell, -1 if the cell is not a vertex.
+    public int getVertex(int cell) {
+        int vertex = Arrays.binarySearch(vertexCells, cell);
+        return vertex >= 0 ? vertex : -1;
+    }
+
+    public int getCell(int vertex) {
+        return vertexCells[vertex];
+    }
+
+    public int getDegree(int vertex) {
+        return offsets[vertex + 1] - offsets[vertex];
+    }
+
+    // The arrays below are shared, not to be modified.
+    public int[] getVertexCells() {
+        return vertexCells;
+    }
+
+    public int[] getOffsets() {
+        return offsets;
+    }
+
+    public int[] getNeighbors() {
+        return neighbors;
+    }
+
+    public int[] getDirectedEdges() {
+        return directedEdges;
+    }
+
+    public int[] getEdgeVertices() {
+        return edgeVertices;
+    }
+}
@@ -0,0 +1,136 @@
+package dataStore;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary copies of the construction, right of way and routing cost rasters,
+ * one file per plane in the CostNetwork directory, memory mapped on later
+ * loads. Each header records the geography and the size and modification
+ * time of every cost file, so editing or replacing a cost file invalidates
+ * the cached planes.
+ *
+ * @author yaw
+ */
+public class CostCache {
+
+    // Plane names, also the cache file names without extension.
+    public static final String CONSTRUCTION = "Construction Costs";
+    public static final String RIGHT_OF_WAY = "RightOfWay Costs";
+    public static final String ROUTING = "Routing Costs";
+
+    private static final String[] SOURCE_NAMES = {"Construction Costs.csv", "Construction Costs.txt", "RightOfWay Costs.txt", "Routing Costs.csv"};
+    private static final long MAGIC = 0x53434353434F5354L;   // "SCCSCOST"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 256;
+
+    private String costNetworkPath;
+
+    public CostCache(String costNetworkPath) {
+        this.costNetworkPath = costNetworkPath;
+    }
+
+    // Cached costs of a plane, or null if there is no cache for it or it does not match the
+    // cost files and settings.
+    public CostRaster load(DataStorer data, String plane) {
+        File cacheFile = cacheFile(plane);
+        if (!cacheFile.exists()) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining()) {
+                if (channel.read(header) < 0) {
+                    break;
+                }
+            }
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getLong() != MAGIC || header.getInt() != VERSION) {
+                return null;
+            }
+            ByteOrder order = header.getInt() == 0 ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+            boolean singlePrecision = header.getInt() == 1;
+            int width = header.getInt();
+            int height = header.getInt();
+            double lowerLeftX = header.getDouble();
+            double lowerLeftY = header.getDouble();
+            double cellSize = header.getDouble();
+            if (singlePrecision != data.isSinglePrecisionCosts() || width != data.getWidth() || height != data.getHeight()
+                    || lowerLeftX != data.getLowerLeftX() || lowerLeftY != data.getLowerLeftY() || cellSize != data.getCellSize()) {
+                return null;
+            }
+            for (String name : SOURCE_NAMES) {
+                long[] stamp = sourceStamp(name);
+                if (header.getLong() != stamp[0] || header.getLong() != stamp[1]) {
+                    return null;
+                }
+            }
+
+            int numCells = width * height;
+            if (channel.size() != HEADER_SIZE + CostRaster.byteSize(numCells, singlePrecision)) {
+                return null;
+            }
+            return CostRaster.map(channel, HEADER_SIZE, numCells, singlePrecision, order);
+        } catch (IOException e) {
+            System.out.println("Cost cache not read: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Write the costs of a plane with a header describing the current cost files.
+    public void save(DataStorer data, String plane, CostRaster costs) {
+        Path tempPath = new File(costNetworkPath, plane + ".bin.tmp").toPath();
+        try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putLong(MAGIC);
+            header.putInt(VERSION);
+            header.putInt(costs.getByteOrder() == ByteOrder.LITTLE_ENDIAN ? 0 : 1);
+            header.putInt(costs.isSinglePrecision() ? 1 : 0);
+            header.putInt(data.getWidth());
+            header.putInt(data.getHeight());
+            header.putDouble(data.getLowerLeftX());
+            header.putDouble(data.getLowerLeftY());
+            header.putDouble(data.getCellSize());
+            for (String name : SOURCE_NAMES) {
+                long[] stamp = sourceStamp(name);
+                header.putLong(stamp[0]);
+                header.putLong(stamp[1]);
+            }
+            header.clear();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            costs.write(channel);
+        } catch (IOException e) {
+            System.out.println("Cost cache not written: " + e.getMessage());
+            return;
+        }
+
+        try {
+            Files.move(tempPath, cacheFile(plane).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            System.out.println("Cost cache not written: " + e.getMessage());
+        }
+    }
+
+    private File cacheFile(String plane) {
+        return new File(costNetworkPath, plane + ".bin");
+    }
+
+    // Size and modification time of a cost file, or -1 for both if it does not exist.
+    private long[] sourceStamp(String name) {
+        File file = new File(costNetworkPath, name);
+        if (!file.exists()) {
+            return new long[]{-1, -1};
+        }
+        return new long[]{file.length(), file.lastModified()};
+    }
+}
@@ -0,0 +1,344 @@
+package dataStore;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Parses a cost network file (8 header lines, then a line of cells and a
+ * line of costs for every center cell) on several threads. The file is
+ * mapped in chunks; the newlines of every chunk are counted first so each
+ * thread knows where its first cell line starts, then the chunks are parsed
+ * straight into a CostRaster without creating strings.
+ *
+ * @author yaw
+ */
+public class CostFileParser {
+
+    private static final int CHUNK_SIZE = 1 << 26;
+    private static final int CHUNK_OVERLAP = 1 << 20;   // Room to finish the last pair of a chunk
+    private static final int HEADER_LINES = 8;
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+        1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    private DataStorer data;
+    private int numThreads;
+
+    // Statistics of the last parse.
+    private long numBytes;
+    private long numCells;
+    private long elapsedNanos;
+
+    public CostFileParser(DataStorer data, int numThreads) {
+        this.data = data;
+        this.numThreads = Math.max(1, numThreads);
+    }
+
+    // Parse the file into costs. Text files separate values with whitespace and start each cost
+    // line with a value that is not a cost, or with whitespace; other files separate values with
+    // commas.
+    public void parse(File file, CostRaster costs) throws IOException {
+        parse(file, costs, null, null);
+    }
+
+    // Parse the file into costs, also setting every parsed cost plus the matching addend cost
+    // (or the cost alone if addend is null) in sums.
+    public void parse(File file, CostRaster costs, CostRaster sums, CostRaster addend) throws IOException {
+        long startTime = System.nanoTime();
+        boolean skipFirstCost = file.getName().endsWith(".txt");
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long dataStart = skipHeader(channel, size);
+
+            // Chunk boundaries, then the newlines before each chunk.
+            int numChunks = (int) ((size - dataStart + CHUNK_SIZE - 1) / CHUNK_SIZE);
+            long[] chunkStarts = new long[numChunks + 1];
+            for (int i = 0; i <= numChunks; i++) {
+                chunkStarts[i] = Math.min(size, dataStart + (long) i * CHUNK_SIZE);
+            }
+
+            ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+            try {
+                ArrayList<Future<Long>> counts = new ArrayList<>();
+                for (int i = 0; i < numChunks; i++) {
+                    int chunk = i;
+                    counts.add(pool.submit(() -> countNewlines(channel, chunkStarts[chunk], chunkStarts[chunk + 1])));
+                }
+                long[] linesBefore = new long[numChunks];
+                for (int i = 1; i < numChunks; i++) {
+                    linesBefore[i] = linesBefore[i - 1] + waitFor(counts.get(i - 1));
+                }
+
+                ArrayList<Future<Long>> parses = new ArrayList<>();
+                for (int i = 0; i < numChunks; i++) {
+                    int chunk = i;
+                    parses.add(pool.submit(() -> parseChunk(channel, size, dataStart, chunkStarts[chunk], chunkStarts[chunk + 1], linesBefore[chunk], skipFirstCost, costs, sums, addend)));
+                }
+                numCells = 0;
+                for (Future<Long> parse : parses) {
+                    numCells += waitFor(parse);
+                }
+            } finally {
+                pool.shutdown();
+            }
+            numBytes = size;
+        }
+        elapsedNanos = System.nanoTime() - startTime;
+    }
+
+    // Size, time and rates of the last parse.
+    public String getReport() {
+        double seconds = elapsedNanos / 1e9;
+        return String.format("%.1f MB, %d cells in %.2f s (%.1f MB/s, %.0f cells/s)", numBytes / 1e6, numCells, seconds,
+                numBytes / 1e6 / seconds, numCells / seconds);
+    }
+
+    public long getNumBytes() {
+        return numBytes;
+    }
+
+    public long getNumCells() {
+        return numCells;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    // Offset just past the header lines.
+    private long skipHeader(FileChannel channel, long size) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, CHUNK_OVERLAP));
+        int lines = 0;
+        int position = 0;
+        while (lines < HEADER_LINES && position < buffer.limit()) {
+            if (buffer.get(position++) == '\n') {
+                lines++;
+            }
+        }
+        return position;
+    }
+
+    private long countNewlines(FileChannel channel, long start, long end) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        long count = 0;
+        for (int i = 0; i < buffer.limit(); i++) {
+            if (buffer.get(i) == '\n') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Parse every pair whose cell line starts in [start, end), given the number of data lines
+    // before start. Returns the number of center cells parsed.
+    private long parseChunk(FileChannel channel, long size, long dataStart, long start, long end, long linesBefore, boolean skipFirstCost, CostRaster costs, CostRaster sums, CostRaster addend) throws IOException {
+        // Map from the byte before the chunk to see whether the chunk starts a line.
+        long mapStart = start > dataStart ? start - 1 : start;
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, mapStart, Math.min(size, end + CHUNK_OVERLAP) - mapStart);
+        int chunkEnd = (int) (end - mapStart);
+        int limit = buffer.limit();
+        int[] cells = new int[9];
+        Scanner scanner = new Scanner(buffer);
+        scanner.position = (int) (start - mapStart);
+
+        // Move to the first cell line that starts in the chunk.
+        long line = linesBefore;
+        if (start > dataStart && buffer.get(0) != '\n') {
+            scanner.skipLine();
+            line++;
+        }
+        if (line % 2 == 1) {
+            scanner.skipLine();
+        }
+
+        long numParsed = 0;
+        while (scanner.position < chunkEnd && scanner.position < limit) {
+            // Cell line
+            int numValues = 0;
+            while (scanner.nextValue() && numValues < cells.length) {
+                cells[numValues++] = (int) scanner.longValue();
+            }
+            scanner.skipLine();
+            if (numValues == 0) {
+                continue;
+            }
+
+            // Cost line. As split("\\s+") in the line readers, the first value is skipped unless
+            // the line starts with whitespace, which makes the skipped token the empty one before it.
+            int center = cells[0];
+            if (skipFirstCost && !isLineSpace(buffer, scanner.position)) {
+                scanner.nextValue();
+            }
+            for (int i = 1; i < numValues && scanner.nextValue(); i++) {
+                int direction = data.getNeighborNum(center, cells[i]);
+                if (direction < 0) {
+                    throw new IOException("Cost file lists cell " + cells[i] + " as a neighbor of cell " + center + ", but they are not adjacent.");
+                }
+                costs.setCost(center, direction, scanner.doubleValue());
+                if (sums != null) {
+                    // Read back the stored cost so single precision sums match a separate pass.
+                    double cost = costs.getCost(center, direction);
+                    sums.setCost(center, direction, addend == null ? cost : cost + addend.getCost(center, direction));
+                }
+            }
+            scanner.skipLine();
+            numParsed++;
+        }
+        return numParsed;
+    }
+
+    private static boolean isLineSpace(MappedByteBuffer buffer, int position) {
+        if (position >= buffer.limit()) {
+            return false;
+        }
+        byte b = buffer.get(position);
+        return b == ' ' || b == '\t' || b == '\r' || b == '\f' || b == 0x0B;
+    }
+
+    private long waitFor(Future<Long> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    // Reads the values of one line at a time from a buffer.
+    private static class Scanner {
+
+        MappedByteBuffer buffer;
+        int position;
+        int tokenStart;
+        int tokenEnd;
+        long mantissa;
+        int exponent;
+        boolean negative;
+        boolean exact;  // Mantissa and exponent hold the value exactly
+
+        Scanner(MappedByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        // Move to the next value on the current line and scan it. False at the end of the line.
+        boolean nextValue() {
+            int limit = buffer.limit();
+            byte b = 0;
+            while (position < limit) {
+                b = buffer.get(position);
+                if (b != ',' && b != ' ' && b != '\t' && b != '\r') {
+                    break;
+                }
+                position++;
+            }
+            if (position >= limit || b == '\n') {
+                return false;
+            }
+
+            tokenStart = position;
+            mantissa = 0;
+            exponent = 0;
+            negative = false;
+            exact = true;
+            int digits = 0;
+            if (b == '-' || b == '+') {
+                negative = b == '-';
+                position++;
+            }
+            boolean fraction = false;
+            while (position < limit) {
+                b = buffer.get(position);
+                if (b >= '0' && b <= '9') {
+                    if (digits < 18) {
+                        mantissa = mantissa * 10 + (b - '0');
+                        if (mantissa != 0) {
+                            digits++;
+                        }
+                        if (fraction) {
+                            exponent--;
+                        }
+                    } else {
+                        exact = false;
+                        if (!fraction) {
+                            exponent++;
+                        }
+                    }
+                } else if (b == '.' && !fraction) {
+                    fraction = true;
+                } else if (b == 'e' || b == 'E') {
+                    position++;
+                    boolean negativeExponent = false;
+                    if (position < limit && (buffer.get(position) == '-' || buffer.get(position) == '+')) {
+                        negativeExponent = buffer.get(position) == '-';
+                        position++;
+                    }
+                    int value = 0;
+                    while (position < limit && buffer.get(position) >= '0' && buffer.get(position) <= '9') {
+                        value = Math.min(100000, value * 10 + (buffer.get(position) - '0'));
+                        position++;
+                    }
+                    exponent += negativeExponent ? -value : value;
+                    break;
+                } else {
+                    break;
+                }
+                position++;
+            }
+
+            // Anything else up to the separator, like Infinity or NaN, needs the library parser.
+            while (position < limit) {
+                b = buffer.get(position);
+                if (b == ',' || b == ' ' || b == '\t' || b == '\r' || b == '\n') {
+                    break;
+                }
+                exact = false;
+                position++;
+            }
+            tokenEnd = position;
+            return true;
+        }
+
+        long longValue() {
+            long value = mantissa;
+            for (int i = 0; i < exponent; i++) {
+                value *= 10;
+            }
+            return negative ? -value : value;
+        }
+
+        // Exact for up to 15 significant digits and powers of ten up to 22, as Double.parseDouble.
+        double doubleValue() {
+            if (exact && mantissa < (1L << 53) && exponent >= -22 && exponent <= 22) {
+                double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+                return negative ? -value : value;
+            }
+            byte[] token = new byte[tokenEnd - tokenStart];
+            for (int i = 0; i < token.length; i++) {
+                token[i] = buffer.get(tokenStart + i);
+            }
+            return Double.parseDouble(new String(token, StandardCharsets.US_ASCII));
+        }
+
+        void skipLine() {
+            int limit = buffer.limit();
+            while (position < limit && buffer.get(position) != '\n') {
+                position++;
+            }
+            position++;
+        }
+    }
+}
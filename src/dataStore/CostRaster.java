@@ -0,0 +1,226 @@
+package dataStore;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * The 8 neighbor costs of every raster cell, held in contiguous direct
+ * buffers instead of one array per cell. Costs can be kept in single
+ * precision to halve the memory. An overlay raster stores only the costs
+ * that differ from a base raster and reads everything else through it.
+ *
+ * @author yaw
+ */
+public class CostRaster {
+
+    // Cells per buffer, so every buffer stays under the 2 GB limit.
+    private static final int BLOCK_SHIFT = 22;
+    private static final int BLOCK_MASK = (1 << BLOCK_SHIFT) - 1;
+
+    private int numCells;   // Highest cell number; cell numbering starts at 1
+    private boolean singlePrecision;
+    private boolean mapped;
+    private ByteBuffer[] byteBlocks;
+    private DoubleBuffer[] doubleBlocks;
+    private FloatBuffer[] floatBlocks;
+
+    // Overlay data: base costs, changed directions per cell, and the changed costs keyed by cell * 8 + direction.
+    private CostRaster base;
+    private byte[] changedDirections;
+    private long[] keys;
+    private double[] values;
+    private int numChanged;
+
+    // Dense raster for cells 0 through numCells with every cost set to Double.MAX_VALUE.
+    public CostRaster(int numCells, boolean singlePrecision) {
+        this(numCells, singlePrecision, new ByteBuffer[numBlocks(numCells)]);
+        for (int block = 0; block < byteBlocks.length; block++) {
+            byteBlocks[block] = ByteBuffer.allocateDirect(blockBytes(block)).order(ByteOrder.nativeOrder());
+        }
+        makeViews();
+        fill(Double.MAX_VALUE);
+    }
+
+    private CostRaster(int numCells, boolean singlePrecision, ByteBuffer[] byteBlocks) {
+        this.numCells = numCells;
+        this.singlePrecision = singlePrecision;
+        this.byteBlocks = byteBlocks;
+    }
+
+    // Overlay on base with no changes yet.
+    public CostRaster(CostRaster base) {
+        this.base = base;
+        numCells = base.numCells;
+        singlePrecision = base.singlePrecision;
+        changedDirections = new byte[numCells + 1];
+        keys = new long[1024];
+        values = new double[1024];
+        Arrays.fill(keys, -1);
+    }
+
+    public double getCost(int cell, int direction) {
+        if (base != null) {
+            if ((changedDirections[cell] & (1 << direction)) == 0) {
+                return base.getCost(cell, direction);
+            }
+            return values[find((long) cell * 8 + direction)];
+        }
+        int index = ((cell & BLOCK_MASK) << 3) + direction;
+        if (singlePrecision) {
+            float cost = floatBlocks[cell >>> BLOCK_SHIFT].get(index);
+            return cost == Float.POSITIVE_INFINITY ? Double.MAX_VALUE : cost;
+        }
+        return doubleBlocks[cell >>> BLOCK_SHIFT].get(index);
+    }
+
+    // Not safe to call while other threads read the raster.
+    public void setCost(int cell, int direction, double cost) {
+        if (direction < 0 || direction > 7) {
+            throw new ArrayIndexOutOfBoundsException("Direction " + direction + " of cell " + cell);
+        }
+        if (base != null) {
+            long key = (long) cell * 8 + direction;
+            int slot = find(key);
+            if (keys[slot] != key) {
+                keys[slot] = key;
+                changedDirections[cell] |= 1 << direction;
+                if (++numChanged * 2 > keys.length) {
+                    grow();
+                    slot = find(key);
+                }
+            }
+            values[slot] = cost;
+            return;
+        }
+        int index = ((cell & BLOCK_MASK) << 3) + direction;
+        if (singlePrecision) {
+            floatBlocks[cell >>> BLOCK_SHIFT].put(index, cost >= Float.MAX_VALUE ? Float.POSITIVE_INFINITY : (float) cost);
+        } else {
+            doubleBlocks[cell >>> BLOCK_SHIFT].put(index, cost);
+        }
+    }
+
+    // Set every cost of a dense raster.
+    public void fill(double cost) {
+        for (int cell = 0; cell <= numCells; cell++) {
+            for (int direction = 0; direction < 8; direction++) {
+                setCost(cell, direction, cost);
+            }
+        }
+    }
+
+    // Drop all changes of an overlay.
+    public void clearChanges() {
+        Arrays.fill(changedDirections, (byte) 0);
+        Arrays.fill(keys, -1);
+        numChanged = 0;
+    }
+
+    public int getNumCells() {
+        return numCells;
+    }
+
+    public boolean isSinglePrecision() {
+        return singlePrecision;
+    }
+
+    public CostRaster getBase() {
+        return base;
+    }
+
+    // Direct memory held by a dense raster, 0 if it is mapped from a file.
+    public long getAllocatedBytes() {
+        return base != null || mapped ? 0 : byteSize(numCells, singlePrecision);
+    }
+
+    // Number of costs an overlay holds instead of its base.
+    public int getNumChanged() {
+        return numChanged;
+    }
+
+    // Read only raster over the bytes of a file written by write, starting at position.
+    public static CostRaster map(FileChannel channel, long position, int numCells, boolean singlePrecision, ByteOrder order) throws IOException {
+        CostRaster raster = new CostRaster(numCells, singlePrecision, new ByteBuffer[numBlocks(numCells)]);
+        for (int block = 0; block < raster.byteBlocks.length; block++) {
+            raster.byteBlocks[block] = channel.map(FileChannel.MapMode.READ_ONLY, position, raster.blockBytes(block)).order(order);
+            position += raster.blockBytes(block);
+        }
+        raster.mapped = true;
+        raster.makeViews();
+        return raster;
+    }
+
+    // Write the costs of a dense raster to the channel's current position, in the buffers' byte order.
+    public void write(FileChannel channel) throws IOException {
+        for (ByteBuffer block : byteBlocks) {
+            ByteBuffer bytes = block.duplicate();
+            bytes.clear();
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        }
+    }
+
+    // Bytes written for a dense raster of numCells cells.
+    public static long byteSize(int numCells, boolean singlePrecision) {
+        return (long) (numCells + 1) * 8 * (singlePrecision ? 4 : 8);
+    }
+
+    public ByteOrder getByteOrder() {
+        return byteBlocks[0].order();
+    }
+
+    private static int numBlocks(int numCells) {
+        return (numCells >> BLOCK_SHIFT) + 1;
+    }
+
+    private int blockBytes(int block) {
+        int blockCells = Math.min(1 << BLOCK_SHIFT, numCells + 1 - (block << BLOCK_SHIFT));
+        return blockCells * 8 * (singlePrecision ? 4 : 8);
+    }
+
+    private void makeViews() {
+        if (singlePrecision) {
+            floatBlocks = new FloatBuffer[byteBlocks.length];
+        } else {
+            doubleBlocks = new DoubleBuffer[byteBlocks.length];
+        }
+        for (int block = 0; block < byteBlocks.length; block++) {
+            if (singlePrecision) {
+                floatBlocks[block] = byteBlocks[block].asFloatBuffer();
+            } else {
+                doubleBlocks[block] = byteBlocks[block].asDoubleBuffer();
+            }
+        }
+    }
+
+    // Linear probing for key, returning its slot or the empty slot where it belongs.
+    private int find(long key) {
+        int mask = keys.length - 1;
+        int slot = (int) (key ^ (key >>> 29)) * 0x9E3779B9 & mask;
+        while (keys[slot] != key && keys[slot] != -1) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        double[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new double[oldKeys.length * 2];
+        Arrays.fill(keys, -1);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != -1) {
+                int slot = find(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
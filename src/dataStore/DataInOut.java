@@ -11,6 +11,9 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import static utilities.Utilities.*;
+import utilities.ContentHash;
+import solver.MPSFileWriter;
+import solver.Triangulation;
 import com.bbn.openmap.omGraphics.OMGraphic;
 import com.bbn.openmap.dataAccess.shape.EsriPolyline;
 import com.bbn.openmap.dataAccess.shape.EsriPolylineList;
@@ -20,8 +23,10 @@ import com.bbn.openmap.dataAccess.shape.EsriPoint;
 import com.bbn.openmap.dataAccess.shape.EsriPointList;
 import java.io.DataOutputStream;
 import java.io.FileNotFoundException;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -33,6 +38,7 @@ import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
 
 /**
  *
@@ -40,6 +46,9 @@ import java.util.TreeMap;
  */
 public class DataInOut {
 
+    // Marks the content hash at the end of the candidate network header.
+    private static final String CANDIDATE_HASH_PREFIX = "ContentHash=";
+
     private String basePath;
     private String dataset;
     private String scenario;
@@ -61,6 +70,8 @@ public class DataInOut {
         loadTransport();
         System.out.print("Loading Delaunay Pairs...");
         loadDelaunayPairs();
+        System.out.print("Loading Delaunay Triangulation...");
+        loadTriangulation();
         System.out.print("Loading Candidate Graph...");
         loadCandidateGraph();
         System.out.println("Data Loaded.");
@@ -126,22 +137,158 @@ public class DataInOut {
         }
     }
 
-    public void loadCosts() {
-        double[][] rightOfWayCosts = new double[0][0];
-        double[][] constructionCosts = new double[0][0];
-        double[][] routingCosts = new double[0][0];
+    // Each cost plane is mapped from the cost cache if it is still current, otherwise read from
+    // its cost file and cached.
+    public CostRaster loadConstructionCosts() {
+        CostRaster constructionCosts = getCostCache().load(data, CostCache.CONSTRUCTION);
+        if (constructionCosts != null) {
+            return constructionCosts;
+        }
+
+        if (data.getCostParserThreads() > 0) {
+            constructionCosts = parseCostFile("Construction Costs.csv");
+            if (constructionCosts == null) {
+                constructionCosts = parseCostFile("Construction Costs.txt");
+            }
+        } else {
+            constructionCosts = readConstructionCosts();
+        }
+
+        if (constructionCosts != null) {
+            getCostCache().save(data, CostCache.CONSTRUCTION, constructionCosts);
+        }
+        return constructionCosts;
+    }
+
+    // Null if there are no right of way costs.
+    public CostRaster loadRightOfWayCosts() {
+        CostRaster rightOfWayCosts = getCostCache().load(data, CostCache.RIGHT_OF_WAY);
+        if (rightOfWayCosts != null) {
+            return rightOfWayCosts;
+        }
+
+        if (data.getCostParserThreads() > 0) {
+            rightOfWayCosts = parseCostFile("RightOfWay Costs.txt");
+        } else {
+            rightOfWayCosts = readRightOfWayCosts();
+        }
+
+        if (rightOfWayCosts != null) {
+            getCostCache().save(data, CostCache.RIGHT_OF_WAY, rightOfWayCosts);
+        }
+        return rightOfWayCosts;
+    }
+
+    public CostRaster loadRoutingCosts() {
+        CostRaster routingCosts = getCostCache().load(data, CostCache.ROUTING);
+        if (routingCosts != null) {
+            return routingCosts;
+        }
+
+        if (data.getCostParserThreads() > 0) {
+            routingCosts = parseCostFile("Routing Costs.csv");
+        } else {
+            routingCosts = readRoutingCosts();
+        }
+
+        if (routingCosts != null) {
+            System.out.println("Custom Routing Loaded.");
+        } else if (data.getCostParserThreads() > 0) {
+            routingCosts = deriveRoutingCosts();
+        } else {
+            routingCosts = new CostRaster(data.getWidth() * data.getHeight(), data.isSinglePrecisionCosts());
+            sumCosts(data.getConstructionCosts(), data.getRightOfWayCosts(), routingCosts);
+        }
+
+        getCostCache().save(data, CostCache.ROUTING, routingCosts);
+        return routingCosts;
+    }
+
+    // Routing costs as construction plus right of way costs, set while the last of the two cost
+    // files that still need parsing is parsed, so there is no separate pass over the rasters.
+    // Construction and right of way costs read on the way are handed to the data store.
+    private CostRaster deriveRoutingCosts() {
+        CostRaster routingCosts = new CostRaster(data.getWidth() * data.getHeight(), data.isSinglePrecisionCosts());
+        CostRaster constructionCosts = data.isConstructionCostsLoaded() ? data.getConstructionCosts() : getCostCache().load(data, CostCache.CONSTRUCTION);
+        CostRaster rightOfWayCosts = data.isRightOfWayCostsLoaded() ? data.getRightOfWayCosts() : getCostCache().load(data, CostCache.RIGHT_OF_WAY);
+        boolean parseRightOfWay = rightOfWayCosts == null && !data.isRightOfWayCostsLoaded()
+                && new File(basePath + "/" + dataset + "/BaseData/CostNetwork/RightOfWay Costs.txt").exists();
+
+        if (constructionCosts == null) {
+            // Routing costs are only complete once right of way costs are added.
+            CostRaster sums = parseRightOfWay ? null : routingCosts;
+            constructionCosts = parseCostFile("Construction Costs.csv", sums, rightOfWayCosts);
+            if (constructionCosts == null) {
+                constructionCosts = parseCostFile("Construction Costs.txt", sums, rightOfWayCosts);
+            }
+            if (constructionCosts != null) {
+                getCostCache().save(data, CostCache.CONSTRUCTION, constructionCosts);
+            }
+        } else if (!parseRightOfWay) {
+            sumCosts(constructionCosts, rightOfWayCosts, routingCosts);
+        }
+
+        if (parseRightOfWay) {
+            rightOfWayCosts = parseCostFile("RightOfWay Costs.txt", routingCosts, constructionCosts);
+            if (rightOfWayCosts != null) {
+                getCostCache().save(data, CostCache.RIGHT_OF_WAY, rightOfWayCosts);
+            }
+        }
+
+        data.setConstructionCosts(constructionCosts);
+        data.setRightOfWayCosts(rightOfWayCosts);
+        return routingCosts;
+    }
+
+    // Sum construction and right of way costs.
+    private void sumCosts(CostRaster constructionCosts, CostRaster rightOfWayCosts, CostRaster routingCosts) {
+        for (int i = 0; i <= routingCosts.getNumCells(); i++) {
+            for (int j = 0; j < 8; j++) {
+                double cost = constructionCosts.getCost(i, j);
+                if (rightOfWayCosts != null) {
+                    cost += rightOfWayCosts.getCost(i, j);
+                }
+                routingCosts.setCost(i, j, cost);
+            }
+        }
+    }
+
+    // Parse a cost file with the parallel parser, or return null if it does not exist.
+    private CostRaster parseCostFile(String name) {
+        return parseCostFile(name, null, null);
+    }
+
+    // Also set each parsed cost plus the addend cost in sums, as CostFileParser.parse.
+    private CostRaster parseCostFile(String name, CostRaster sums, CostRaster addend) {
+        File file = new File(basePath + "/" + dataset + "/BaseData/CostNetwork/" + name);
+        if (!file.exists()) {
+            return null;
+        }
+        CostRaster costs = new CostRaster(data.getWidth() * data.getHeight(), data.isSinglePrecisionCosts());
+        CostFileParser parser = new CostFileParser(data, data.getCostParserThreads());
+        try {
+            parser.parse(file, costs, sums, addend);
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+            return null;
+        }
+        System.out.println("Parsed " + name + ": " + parser.getReport());
+        return costs;
+    }
+
+    // Line by line readers.
+    private CostRaster readConstructionCosts() {
+        long startTime = System.nanoTime();
+        int numCells = data.getWidth() * data.getHeight();
+        boolean singlePrecision = data.isSinglePrecisionCosts();
+        CostRaster constructionCosts = null;
 
         String path = basePath + "/" + dataset + "/BaseData/CostNetwork/Construction Costs.csv";
 
         // Load construction costs from csv file.
         try (BufferedReader br = new BufferedReader(new FileReader(path))) {
             // Create construction costs array.
-            constructionCosts = new double[data.getWidth() * data.getHeight() + 1][8];
-            for (int i = 0; i < constructionCosts.length; i++) {
-                for (int j = 0; j < constructionCosts[i].length; j++) {
-                    constructionCosts[i][j] = Double.MAX_VALUE;
-                }
-            }
+            constructionCosts = new CostRaster(numCells, singlePrecision);
 
             for (int i = 0; i < 8; i++) {
                 br.readLine();
@@ -174,7 +321,7 @@ public class DataInOut {
                     double cost = Double.parseDouble(costLine.substring(currentCostIndex, nextCostIndex));
                     currentCostIndex = nextCostIndex + 1;
 
-                    constructionCosts[centerCell][data.getNeighborNum(centerCell, neighborCell)] = cost;
+                    constructionCosts.setCost(centerCell, data.getNeighborNum(centerCell, neighborCell), cost);
                 }
 
                 line = br.readLine();
@@ -185,12 +332,7 @@ public class DataInOut {
             path = basePath + "/" + dataset + "/BaseData/CostNetwork/Construction Costs.txt";
             try (BufferedReader br = new BufferedReader(new FileReader(path))) {
                 // Create construction costs array.
-                constructionCosts = new double[data.getWidth() * data.getHeight() + 1][8];
-                for (int i = 0; i < constructionCosts.length; i++) {
-                    for (int j = 0; j < constructionCosts[i].length; j++) {
-                        constructionCosts[i][j] = Double.MAX_VALUE;
-                    }
-                }
+                constructionCosts = new CostRaster(numCells, singlePrecision);
 
                 for (int i = 0; i < 8; i++) {
                     br.readLine();
@@ -204,7 +346,7 @@ public class DataInOut {
 
                     int centerCell = Integer.parseInt(cells[0]);
                     for (int i = 1; i < costs.length; i++) {
-                        constructionCosts[centerCell][data.getNeighborNum(centerCell, Integer.parseInt(cells[i]))] = Double.parseDouble(costs[i]);
+                        constructionCosts.setCost(centerCell, data.getNeighborNum(centerCell, Integer.parseInt(cells[i])), Double.parseDouble(costs[i]));
                     }
                     line = br.readLine();
                 }
@@ -213,16 +355,20 @@ public class DataInOut {
             }
         }
 
-        // Load right of way costs.  
-        path = basePath + "/" + dataset + "/BaseData/CostNetwork/RightOfWay Costs.txt";
+        reportRead("Construction Costs", startTime);
+        return constructionCosts;
+    }
+
+    private CostRaster readRightOfWayCosts() {
+        long startTime = System.nanoTime();
+        int numCells = data.getWidth() * data.getHeight();
+        boolean singlePrecision = data.isSinglePrecisionCosts();
+        CostRaster rightOfWayCosts;
+
+        String path = basePath + "/" + dataset + "/BaseData/CostNetwork/RightOfWay Costs.txt";
         try (BufferedReader br = new BufferedReader(new FileReader(path))) {
             // Create right of way cost array.
-            rightOfWayCosts = new double[data.getWidth() * data.getHeight() + 1][8];
-            for (int i = 0; i < rightOfWayCosts.length; i++) {
-                for (int j = 0; j < rightOfWayCosts[i].length; j++) {
-                    rightOfWayCosts[i][j] = Double.MAX_VALUE;
-                }
-            }
+            rightOfWayCosts = new CostRaster(numCells, singlePrecision);
 
             for (int i = 0; i < 8; i++) {
                 br.readLine();
@@ -235,7 +381,7 @@ public class DataInOut {
                 String[] cells = line.split("\\s+");
                 int centerCell = Integer.parseInt(cells[0]);
                 for (int i = 1; i < costs.length; i++) {
-                    rightOfWayCosts[centerCell][data.getNeighborNum(centerCell, Integer.parseInt(cells[i]))] = Double.parseDouble(costs[i]);
+                    rightOfWayCosts.setCost(centerCell, data.getNeighborNum(centerCell, Integer.parseInt(cells[i])), Double.parseDouble(costs[i]));
                 }
                 line = br.readLine();
             }
@@ -243,17 +389,20 @@ public class DataInOut {
             rightOfWayCosts = null;
         }
 
-        // Load routing costs.
-        path = basePath + "/" + dataset + "/BaseData/CostNetwork/Routing Costs.csv";
+        reportRead("RightOfWay Costs", startTime);
+        return rightOfWayCosts;
+    }
 
-        routingCosts = new double[data.getWidth() * data.getHeight() + 1][8];
-        try (BufferedReader br = new BufferedReader(new FileReader(path))) {
-            for (int i = 0; i < routingCosts.length; i++) {
-                for (int j = 0; j < routingCosts[i].length; j++) {
-                    routingCosts[i][j] = Double.MAX_VALUE;
-                }
-            }
+    // Null if there are no custom routing costs.
+    private CostRaster readRoutingCosts() {
+        long startTime = System.nanoTime();
+        int numCells = data.getWidth() * data.getHeight();
+        boolean singlePrecision = data.isSinglePrecisionCosts();
 
+        String path = basePath + "/" + dataset + "/BaseData/CostNetwork/Routing Costs.csv";
+
+        CostRaster routingCosts = new CostRaster(numCells, singlePrecision);
+        try (BufferedReader br = new BufferedReader(new FileReader(path))) {
             for (int i = 0; i < 8; i++) {
                 br.readLine();
             }
@@ -285,26 +434,94 @@ public class DataInOut {
                     double cost = Double.parseDouble(costLine.substring(currentCostIndex, nextCostIndex));
                     currentCostIndex = nextCostIndex + 1;
 
-                    routingCosts[centerCell][data.getNeighborNum(centerCell, neighborCell)] = cost;
+                    routingCosts.setCost(centerCell, data.getNeighborNum(centerCell, neighborCell), cost);
                 }
 
                 line = br.readLine();
             }
-            System.out.println("Custom Routing Loaded.");
         } catch (IOException e) {
-            for (int i = 0; i < routingCosts.length; i++) {
-                for (int j = 0; j < routingCosts[i].length; j++) {
-                    routingCosts[i][j] = constructionCosts[i][j];
-                    if (rightOfWayCosts != null) {
-                        routingCosts[i][j] += rightOfWayCosts[i][j];
+            routingCosts = null;
+        }
+
+        reportRead("Routing Costs", startTime);
+        return routingCosts;
+    }
+
+    private void reportRead(String name, long startTime) {
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        long numBytes = 0;
+        for (String extension : new String[]{".csv", ".txt"}) {
+            File file = new File(basePath + "/" + dataset + "/BaseData/CostNetwork/" + name + extension);
+            if (file.exists()) {
+                numBytes = file.length();
+                break;
+            }
+        }
+        if (numBytes > 0) {
+            System.out.println(String.format("Read %s: %.1f MB in %.2f s (%.1f MB/s)", name, numBytes / 1e6, seconds, numBytes / 1e6 / seconds));
+        }
+    }
+
+    // Parse each cost file with both the parallel parser and the line reader, bypassing the cost
+    // cache, and report the costs they disagree on. Routing costs summed while parsing, as in
+    // deriveRoutingCosts, are checked against the sum of the line reader costs. Returns the number
+    // of disagreeing costs.
+    public long checkCostParser() {
+        CostRaster readConstructionCosts = readConstructionCosts();
+        CostRaster readRightOfWayCosts = readRightOfWayCosts();
+
+        CostRaster parsedConstructionCosts = parseCostFile("Construction Costs.csv");
+        if (parsedConstructionCosts == null) {
+            parsedConstructionCosts = parseCostFile("Construction Costs.txt");
+        }
+        long numDifferences = compareCosts("Construction Costs", parsedConstructionCosts, readConstructionCosts);
+        numDifferences += compareCosts("RightOfWay Costs", parseCostFile("RightOfWay Costs.txt"), readRightOfWayCosts);
+        numDifferences += compareCosts("Routing Costs", parseCostFile("Routing Costs.csv"), readRoutingCosts());
+
+        if (readConstructionCosts != null) {
+            int numCells = data.getWidth() * data.getHeight();
+            CostRaster summedCosts = new CostRaster(numCells, data.isSinglePrecisionCosts());
+            sumCosts(readConstructionCosts, readRightOfWayCosts, summedCosts);
+            CostRaster parsedSums = new CostRaster(numCells, data.isSinglePrecisionCosts());
+            if (parseCostFile("Construction Costs.csv", parsedSums, readRightOfWayCosts) == null) {
+                parseCostFile("Construction Costs.txt", parsedSums, readRightOfWayCosts);
+            }
+            numDifferences += compareCosts("Derived Routing Costs", parsedSums, summedCosts);
+        }
+        return numDifferences;
+    }
+
+    private long compareCosts(String name, CostRaster parsed, CostRaster read) {
+        if (parsed == null || read == null) {
+            if (parsed != read) {
+                System.out.println(name + ": only " + (parsed == null ? "the line reader" : "the parser") + " loaded costs.");
+                return 1;
+            }
+            return 0;
+        }
+        long numDifferences = 0;
+        int numCells = data.getWidth() * data.getHeight();
+        for (int cell = 0; cell <= numCells; cell++) {
+            for (int direction = 0; direction < 8; direction++) {
+                double parsedCost = parsed.getCost(cell, direction);
+                double readCost = read.getCost(cell, direction);
+                // Missing neighbors sum to infinity in sumCosts but stay at the maximum when summed
+                // while parsing; either way there is no edge.
+                boolean noEdge = parsedCost >= Double.MAX_VALUE && readCost >= Double.MAX_VALUE;
+                if (!noEdge && Double.doubleToLongBits(parsedCost) != Double.doubleToLongBits(readCost)) {
+                    if (numDifferences < 10) {
+                        System.out.println(name + ": cell " + cell + " direction " + direction + " parsed " + parsedCost + ", read " + readCost);
                     }
+                    numDifferences++;
                 }
             }
         }
+        System.out.println(name + ": " + numDifferences + " costs differ between the parser and the line reader.");
+        return numDifferences;
+    }
 
-        data.setConstructionCosts(constructionCosts);
-        data.setRightOfWayCosts(rightOfWayCosts);
-        data.setRoutingCosts(routingCosts);
+    private CostCache getCostCache() {
+        return new CostCache(basePath + "/" + dataset + "/BaseData/CostNetwork");
     }
 
     private void loadSources() {
@@ -598,6 +815,7 @@ public class DataInOut {
                 String line = br.readLine();
 
                 HashSet<Edge> pairs = new HashSet<>();
+                HashMap<Edge, int[]> pairRoutes = new HashMap<>();
                 while (line != null) {
                     String[] elements = line.split("\\s+");
                     int v1 = Integer.parseInt(elements[4]);
@@ -605,11 +823,21 @@ public class DataInOut {
                     Edge edge = new Edge(v1, v2);
                     pairs.add(edge);
 
+                    // Cell route of the pair, if it was routed
+                    if (elements.length > 7) {
+                        int[] route = new int[elements.length - 6];
+                        for (int i = 0; i < route.length; i++) {
+                            route[i] = Integer.parseInt(elements[6 + i]);
+                        }
+                        pairRoutes.put(edge, route);
+                    }
+
                     // Prepare for next entry
                     line = br.readLine();
                 }
 
                 data.setDelaunayPairs(pairs);
+                data.setDelaunayPairRoutes(pairRoutes);
                 System.out.println();
             } catch (IOException e) {
                 System.out.println(e.getMessage());
@@ -619,6 +847,42 @@ public class DataInOut {
         }
     }
 
+    private void loadTriangulation() {
+        // Check if file exists
+        String triangulationPath = basePath + "/" + dataset + "/Scenarios/" + scenario + "/Network/DelaunayNetwork/Triangulation.txt";
+        if (new File(triangulationPath).exists()) {
+            // Load from file.
+            try (BufferedReader br = new BufferedReader(new FileReader(triangulationPath))) {
+                br.readLine();
+                int numVertices = Integer.parseInt(br.readLine().split("\\s+")[1]);
+                int[] cells = new int[numVertices];
+                int[] xs = new int[numVertices];
+                int[] ys = new int[numVertices];
+                for (int i = 0; i < numVertices; i++) {
+                    String[] elements = br.readLine().split("\\s+");
+                    cells[i] = Integer.parseInt(elements[0]);
+                    xs[i] = Integer.parseInt(elements[1]);
+                    ys[i] = Integer.parseInt(elements[2]);
+                }
+                int numTriangles = Integer.parseInt(br.readLine().split("\\s+")[1]);
+                int[] triangleCells = new int[3 * numTriangles];
+                for (int t = 0; t < numTriangles; t++) {
+                    String[] elements = br.readLine().split("\\s+");
+                    for (int i = 0; i < 3; i++) {
+                        triangleCells[3 * t + i] = Integer.parseInt(elements[i]);
+                    }
+                }
+
+                data.setTriangulation(new Triangulation(cells, xs, ys, triangleCells));
+                System.out.println();
+            } catch (IOException | NumberFormatException e) {
+                System.out.println(e.getMessage());
+            }
+        } else {
+            System.out.println("Not Yet Generated.");
+        }
+    }
+
     public void loadPriceConfiguration() {
         // Check if file exists
         String pricesPath = basePath + "/" + dataset + "/Scenarios/" + scenario + "/Configurations/priceInput.csv";
@@ -648,8 +912,10 @@ public class DataInOut {
         }
     }
 
+    // Save the Delaunay pairs, each followed by its cell route once the pairs are routed.
     public void saveDelaunayPairs() {
         HashSet<Edge> delaunayPairs = data.getDelaunayPairs();
+        HashMap<Edge, int[]> pairRoutes = data.getDelaunayPairRoutes();
 
         String delaunayPairsPath = basePath + "/" + dataset + "/Scenarios/" + scenario + "/Network/DelaunayNetwork/DelaunayPaths.txt";
 
@@ -669,7 +935,42 @@ public class DataInOut {
                 } else {
                     bw.write("SINK\t" + data.getSinks()[data.sinkNum(pair.v2)].getLabel() + "\t");
                 }
-                bw.write(pair.v1 + "\t" + pair.v2 + "\n");
+                bw.write(pair.v1 + "\t" + pair.v2);
+                int[] route = pairRoutes != null ? pairRoutes.get(pair) : null;
+                if (route != null) {
+                    for (int vertex : route) {
+                        bw.write("\t" + vertex);
+                    }
+                }
+                bw.write("\n");
+            }
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    public void saveTriangulation() {
+        Triangulation triangulation = data.getTriangulation();
+        if (triangulation == null) {
+            return;
+        }
+
+        String triangulationPath = basePath + "/" + dataset + "/Scenarios/" + scenario + "/Network/DelaunayNetwork/Triangulation.txt";
+
+        // Save to file.
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter(triangulationPath))) {
+            int[] cells = triangulation.getVertexCells();
+            int[] xs = triangulation.getVertexXs();
+            int[] ys = triangulation.getVertexYs();
+            int[] triangleCells = triangulation.getTriangleCells();
+            bw.write("#  Delaunay triangulation: vertex cells and raster coordinates, then counterclockwise triangle cells (-1 at infinity)\n");
+            bw.write("VERTICES\t" + cells.length + "\n");
+            for (int i = 0; i < cells.length; i++) {
+                bw.write(cells[i] + "\t" + xs[i] + "\t" + ys[i] + "\n");
+            }
+            bw.write("TRIANGLES\t" + triangleCells.length / 3 + "\n");
+            for (int t = 0; t < triangleCells.length; t += 3) {
+                bw.write(triangleCells[t] + "\t" + triangleCells[t + 1] + "\t" + triangleCells[t + 2] + "\n");
             }
         } catch (IOException e) {
             System.out.println(e.getMessage());
@@ -684,10 +985,27 @@ public class DataInOut {
 
         String rawPathsPath = basePath + "/" + dataset + "/Scenarios/" + scenario + "/Network/CandidateNetwork/CandidateNetwork.txt";
 
+        // Hash the edges in canonical order and keep the existing file if it holds the same graph.
+        Edge[] orderedEdges = data.getOrderedGraphEdges();
+        ContentHash hash = new ContentHash();
+        for (Edge e : orderedEdges) {
+            hash.add(e.v1).add(e.v2).add(graphEdgeCosts.get(e)).add(graphEdgeConstructionCosts.get(e)).add(graphEdgeRightOfWayCosts.get(e));
+            int[] route = graphEdgeRoutes.get(e);
+            hash.add(route.length);
+            for (int vertex : route) {
+                hash.add(vertex);
+            }
+        }
+        String contentHash = hash.toHex();
+        if (contentHash.equals(readCandidateGraphHash(rawPathsPath))) {
+            System.out.println("Candidate network unchanged, keeping " + rawPathsPath);
+            return;
+        }
+
         // Save to file.
         try (BufferedWriter bw = new BufferedWriter(new FileWriter(rawPathsPath))) {
-            bw.write("Vertex1\tVertex2\tCost\tConCost\tROWCost\tCellRoute\n");
-            for (Edge e : graphEdgeRoutes.keySet()) {
+            bw.write("Vertex1\tVertex2\tCost\tConCost\tROWCost\tCellRoute\t" + CANDIDATE_HASH_PREFIX + contentHash + "\n");
+            for (Edge e : orderedEdges) {
                 bw.write(e.v1 + "\t" + e.v2 + "\t" + graphEdgeCosts.get(e) + "\t" + graphEdgeConstructionCosts.get(e) + "\t" + graphEdgeRightOfWayCosts.get(e));
                 int[] route = graphEdgeRoutes.get(e);
                 for (int vertex : route) {
@@ -700,6 +1018,22 @@ public class DataInOut {
         }
     }
 
+    // Content hash at the end of a candidate network header, or null if there is none.
+    private String readCandidateGraphHash(String path) {
+        if (!new File(path).exists()) {
+            return null;
+        }
+        try (BufferedReader br = new BufferedReader(new FileReader(path))) {
+            String line = br.readLine();
+            if (line != null && line.contains(CANDIDATE_HASH_PREFIX)) {
+                return line.substring(line.indexOf(CANDIDATE_HASH_PREFIX) + CANDIDATE_HASH_PREFIX.length()).trim();
+            }
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+        }
+        return null;
+    }
+
     public Solution loadSolution(String solutionPath) {
         double threshold = .000001;
         Solution soln = new Solution();
@@ -710,7 +1044,7 @@ public class DataInOut {
         for (File f : new File(solutionPath).listFiles()) {
             if (f.getName().endsWith(".sol")) {
                 solFile = f;
-            } else if (f.getName().endsWith(".mps")) {
+            } else if (f.getName().endsWith(".mps") || f.getName().endsWith(".mps.gz")) {
                 mpsFile = f;
             }
         }
@@ -719,7 +1053,6 @@ public class DataInOut {
         Source[] sources = data.getSources();
         Sink[] sinks = data.getSinks();
         int[] graphVertices = data.getGraphVertices();
-        HashMap<Edge, Double> edgeConstructionCosts = data.getGraphEdgeConstructionCosts();
 
         // Make cell/index maps.
         HashMap<Source, Integer> sourceCellToIndex = new HashMap<>();
@@ -728,8 +1061,7 @@ public class DataInOut {
         HashMap<Integer, Sink> sinkIndexToCell = new HashMap<>();
         HashMap<Integer, Integer> vertexCellToIndex = new HashMap<>();
         HashMap<Integer, Integer> vertexIndexToCell = new HashMap<>();
-        HashMap<UnidirEdge, Integer> edgeToIndex = new HashMap<>();
-        HashMap<Integer, UnidirEdge> edgeIndexToEdge = new HashMap<>();
+        Edge[] modelEdges = getModelEdges(mpsFile);   // Directed edge e of the model is edge e / 2
 
         // Initialize cell/index maps.
         for (int i = 0; i < sources.length; i++) {
@@ -744,18 +1076,6 @@ public class DataInOut {
             vertexCellToIndex.put(graphVertices[i], i);
             vertexIndexToCell.put(i, graphVertices[i]);
         }
-        int index = 0;
-        for (Edge e : edgeConstructionCosts.keySet()) {
-            UnidirEdge e1 = new UnidirEdge(e.v1, e.v2);
-            edgeToIndex.put(e1, index);
-            edgeIndexToEdge.put(index, e1);
-            index++;
-
-            UnidirEdge e2 = new UnidirEdge(e.v2, e.v1);
-            edgeToIndex.put(e2, index);
-            edgeIndexToEdge.put(index, e2);
-            index++;
-        }
 
         HashMap<String, Double> variableValues = new HashMap<>();
 
@@ -782,9 +1102,9 @@ public class DataInOut {
                             soln.addEdgeTransportAmount(new Edge(vertexIndexToCell.get(Integer.parseInt(components[1])), vertexIndexToCell.get(Integer.parseInt(components[2]))), Double.parseDouble(variable[2]));
                             soln.setEdgeTrend(new Edge(vertexIndexToCell.get(Integer.parseInt(components[1])), vertexIndexToCell.get(Integer.parseInt(components[2]))), Integer.parseInt(components[3]));
                         } else {
-                            UnidirEdge unidirEdge = edgeIndexToEdge.get(Integer.parseInt(components[1]));
-                            soln.addEdgeTransportAmount(new Edge(unidirEdge.v1, unidirEdge.v2), Double.parseDouble(variable[2]));
-                            soln.setEdgeTrend(new Edge(unidirEdge.v1, unidirEdge.v2), Integer.parseInt(components[2]));
+                            Edge edge = getDirectedEdge(modelEdges, Integer.parseInt(components[1]));
+                            soln.addEdgeTransportAmount(edge, Double.parseDouble(variable[2]));
+                            soln.setEdgeTrend(edge, Integer.parseInt(components[2]));
                         }
                     } else if (components[0].equals("w")) {
                         soln.addSinkNumWells(sinks[Integer.parseInt(components[1])], (int) Math.round(Double.parseDouble(variable[2])));
@@ -805,7 +1125,8 @@ public class DataInOut {
         }
 
         // load costs into solution.
-        try (BufferedReader br = new BufferedReader(new FileReader(mpsFile))) {
+        try (InputStream mpsStream = mpsFile.getName().endsWith(".gz") ? new GZIPInputStream(new FileInputStream(mpsFile)) : new FileInputStream(mpsFile);
+                BufferedReader br = new BufferedReader(new InputStreamReader(mpsStream))) {
             String line = br.readLine();
             while (!line.equals("COLUMNS")) {
                 line = br.readLine();
@@ -828,8 +1149,7 @@ public class DataInOut {
                         if (components.length == 4) {
                             soln.addEdgeCostComponent(new Edge(vertexIndexToCell.get(Integer.parseInt(components[1])), vertexIndexToCell.get(Integer.parseInt(components[2]))), cost);
                         } else {
-                            UnidirEdge unidirEdge = edgeIndexToEdge.get(Integer.parseInt(components[1]));
-                            soln.addEdgeCostComponent(new Edge(unidirEdge.v1, unidirEdge.v2), cost);
+                            soln.addEdgeCostComponent(getDirectedEdge(modelEdges, Integer.parseInt(components[1])), cost);
                         }
                     }
                 }
@@ -842,6 +1162,21 @@ public class DataInOut {
         return soln;
     }
 
+    // Candidate graph edges in the order the given model numbered them. Models with a content hash
+    // use the EdgeIndex order. Older models numbered edges in construction cost key order.
+    private Edge[] getModelEdges(File mpsFile) {
+        if (mpsFile != null && MPSFileWriter.readContentHash(mpsFile) != null) {
+            return data.getEdgeIndex().getEdges();
+        }
+        return data.getGraphEdgeConstructionCosts().keySet().toArray(new Edge[0]);
+    }
+
+    // Directed model edge e as an Edge pointing the way it carries flow.
+    private Edge getDirectedEdge(Edge[] modelEdges, int e) {
+        Edge edge = modelEdges[e / 2];
+        return e % 2 == 0 ? new Edge(edge.v1, edge.v2) : new Edge(edge.v2, edge.v1);
+    }
+
     public void makeShapeFiles(String path, Solution soln) {
         // Make shapefiles if they do not already exist.
         File newDir = new File(path + "/shapeFiles/");
@@ -6,6 +6,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Set;
 import solver.Solver;
+import solver.Triangulation;
 
 /**
  *
@@ -35,10 +36,21 @@ public class DataStorer {
     private int[] sourceSinkCellLocations;  // Cell number for each source and sink node
 
     // Raw network information
-    private double[][] rightOfWayCosts;
-    private double[][] constructionCosts;
-    private double[][] routingCosts;
-    private double[][] modifiedRoutingCosts;
+    private CostRaster rightOfWayCosts;
+    private CostRaster constructionCosts;
+    private CostRaster routingCosts;
+    private CostRaster modifiedRoutingCosts;    // Overlay on routingCosts
+    private double minRoutingCostModification = 1;  // Smallest factor applied to modifiedRoutingCosts
+    private boolean singlePrecisionCosts = false;
+    private int costParserThreads = Runtime.getRuntime().availableProcessors();    // 0 reads cost files line by line
+    private boolean rightOfWayLoaded;   // Right of way costs may be null once loaded if there are none
+
+    // Cost planes are loaded on first use. When the memory they take exceeds the budget, the least
+    // recently used planes are unloaded and read again when next needed.
+    private long costMemoryBudget = 0;  // Bytes, 0 for no limit
+    private long[] planeUses = new long[3]; // Use counter value at the last use of each plane
+    private long costUses;
+    private boolean costMemoryBudgetWarned;
 
     // Candidate network graph information
     private int[] graphVertices;    // Set of all vertices in graph (source/sink/junction)
@@ -47,7 +59,11 @@ public class DataStorer {
     private HashMap<Edge, Double> graphEdgeRightOfWayCosts;   // Cost for each edge between vertices
     private HashMap<Edge, Double> graphEdgeConstructionCosts;   // Cost for each edge between vertices
     private HashSet<Edge> delaunayPairs;
+    private HashMap<Edge, int[]> delaunayPairRoutes;    // Cell route of each routed Delaunay pair, saved with the pairs
+    private Triangulation triangulation;    // Delaunay triangulation the pairs come from, saved with them
     private HashMap<Edge, Double> graphEdgeLengths; // Length (km) of edge when following routing
+    private EdgeIndex edgeIndex;    // Dense edge ids, reset whenever the edges or their costs change
+    private CandidateGraph candidateGraph;  // Adjacency over the edge index, reset with it
 
     // Configuration data
     private double[] priceConfiguration;
@@ -80,8 +96,28 @@ public class DataStorer {
     }
 
     public void generateDelaunayPairs() {
-        delaunayPairs = solver.generateDelaunayPairs();
+        triangulation = solver.generateDelaunayTriangulation();
+        delaunayPairs = triangulation.getPairs();
+        delaunayPairRoutes = null;
         dataInOut.saveDelaunayPairs();
+        dataInOut.saveTriangulation();
+    }
+
+    // Bring the Delaunay pairs up to date with the sources and sinks. The saved triangulation is
+    // edited point by point and only the pairs that changed are applied to the saved pairs. A
+    // triangulation that does not match the saved pairs is built again.
+    private void updateDelaunayPairs() {
+        if (triangulation == null || delaunayPairs == null || !triangulation.getPairs().equals(delaunayPairs)) {
+            triangulation = solver.generateDelaunayTriangulation();
+            delaunayPairs = triangulation.getPairs();
+        } else {
+            solver.updateDelaunayTriangulation(triangulation);
+            delaunayPairs = new HashSet<>(delaunayPairs);
+            delaunayPairs.removeAll(triangulation.getRemovedPairs());
+            delaunayPairs.addAll(triangulation.getAddedPairs());
+            System.out.println("Delaunay pairs: " + triangulation.getAddedPairs().size() + " added, " + triangulation.getRemovedPairs().size() + " removed.");
+        }
+        dataInOut.saveTriangulation();
     }
 
     public void generateCandidateGraph() {
@@ -95,34 +131,87 @@ public class DataStorer {
                 graphVertices = (int[]) graphComponents[0];
                 graphEdgeCosts = (HashMap<Edge, Double>) graphComponents[1];
                 graphEdgeRoutes = (HashMap<Edge, int[]>) graphComponents[2];
+                delaunayPairRoutes = (HashMap<Edge, int[]>) graphComponents[3];
+                graphEdgeLengths = null;
 
                 // Make right of way and construction costs
                 Object[] costComponents = solver.makeComponentCosts();
                 graphEdgeRightOfWayCosts = (HashMap<Edge, Double>) costComponents[0];
                 graphEdgeConstructionCosts = (HashMap<Edge, Double>) costComponents[1];
+                resetEdgeIndex();
 
+                dataInOut.saveDelaunayPairs();
                 dataInOut.saveCandidateGraph();
             }
         } else {
-            String text = "";
-            for (String outlier : outliers) {
-                text += outlier + ", ";
+            showOutliers(outliers);
+        }
+    }
+
+    // Update the candidate graph after sources or sinks were added or removed. The saved Delaunay
+    // triangulation is updated to the new source and sink set, and of its pairs, those that were
+    // routed before keep their saved routes and only new pairs are routed, so a small edit to the
+    // scenario costs a few searches instead of a full generation. Without saved pair routes
+    // every pair is routed.
+    public void updateCandidateGraph() {
+        if (graphEdgeRoutes == null) {
+            generateCandidateGraph();
+            return;
+        }
+        loadNetworkCosts();
+        String[] outliers = outliers();
+        if (outliers.length == 0) {
+            HashMap<Edge, int[]> previousPairRoutes = delaunayPairRoutes != null ? delaunayPairRoutes : new HashMap<>();
+            HashSet<Edge> previousPairs = delaunayPairs;
+            updateDelaunayPairs();
+            if (delaunayPairs.equals(previousPairs) && previousPairRoutes.keySet().containsAll(delaunayPairs)) {
+                System.out.println("Delaunay pairs unchanged, keeping the candidate network.");
+                return;
             }
-            solver.getMessenger().setText("Outliers: " + text);
+
+            Object[] graphComponents = solver.updateDelaunayCandidateGraph(previousPairRoutes);
+            if (graphComponents != null) {
+                HashMap<Edge, int[]> previousRoutes = graphEdgeRoutes;
+                graphVertices = (int[]) graphComponents[0];
+                graphEdgeCosts = (HashMap<Edge, Double>) graphComponents[1];
+                graphEdgeRoutes = (HashMap<Edge, int[]>) graphComponents[2];
+                delaunayPairRoutes = (HashMap<Edge, int[]>) graphComponents[3];
+                graphEdgeLengths = null;
+
+                // Right of way and construction costs of edges whose route changed
+                Object[] costComponents = solver.makeComponentCosts(previousRoutes, graphEdgeRightOfWayCosts, graphEdgeConstructionCosts);
+                graphEdgeRightOfWayCosts = (HashMap<Edge, Double>) costComponents[0];
+                graphEdgeConstructionCosts = (HashMap<Edge, Double>) costComponents[1];
+                resetEdgeIndex();
+
+                dataInOut.saveDelaunayPairs();
+                dataInOut.saveCandidateGraph();
+            }
+        } else {
+            showOutliers(outliers);
+        }
+    }
+
+    private void showOutliers(String[] outliers) {
+        String text = "";
+        for (String outlier : outliers) {
+            text += outlier + ", ";
         }
+        solver.getMessenger().setText("Outliers: " + text);
     }
 
     public String[] outliers() {
         ArrayList<String> outliers = new ArrayList<>();
+        CostRaster constructionCosts = getConstructionCosts();
         for (Source src : sources) {
             int cell = src.getCellNum();
 
-            if (cell >= constructionCosts.length) {
+            if (cell > constructionCosts.getNumCells()) {
                 outliers.add("SRC-" + src.getLabel());
             }
             boolean connected = false;
-            for (double cost : constructionCosts[cell]) {
-                if (cost < Double.MAX_VALUE) {
+            for (int dir = 0; dir < 8; dir++) {
+                if (constructionCosts.getCost(cell, dir) < Double.MAX_VALUE) {
                     connected = true;
                 }
             }
@@ -133,12 +222,12 @@ public class DataStorer {
         for (Sink snk : sinks) {
             int cell = snk.getCellNum();
 
-            if (cell >= constructionCosts.length) {
+            if (cell > constructionCosts.getNumCells()) {
                 outliers.add("SNK-" + snk.getLabel());
             }
             boolean connected = false;
-            for (double cost : constructionCosts[cell]) {
-                if (cost < Double.MAX_VALUE) {
+            for (int dir = 0; dir < 8; dir++) {
+                if (constructionCosts.getCost(cell, dir) < Double.MAX_VALUE) {
                     connected = true;
                 }
             }
@@ -151,13 +240,14 @@ public class DataStorer {
 
     public void loadNetworkCosts() {
         if (constructionCosts == null) {
-            dataInOut.loadCosts();
+            getConstructionCosts();
 
             // Make right of way and construction costs
             if (graphEdgeRoutes != null) {
                 Object[] costComponents = solver.makeComponentCosts();
                 graphEdgeRightOfWayCosts = (HashMap<Edge, Double>) costComponents[0];
                 graphEdgeConstructionCosts = (HashMap<Edge, Double>) costComponents[1];
+                resetEdgeIndex();
             }
         }
     }
@@ -209,6 +299,33 @@ public class DataStorer {
         return graphEdgeConstructionCosts;
     }
 
+    // Candidate graph edges ordered by their lower, then higher vertex. This is the edge order of
+    // the MPS models with a content hash, so writing and reading their solutions must both use it.
+    public Edge[] getOrderedGraphEdges() {
+        return getEdgeIndex().getEdges().clone();
+    }
+
+    // Dense ids and per edge value arrays for the candidate graph edges, in getOrderedGraphEdges order.
+    public EdgeIndex getEdgeIndex() {
+        if (edgeIndex == null) {
+            edgeIndex = new EdgeIndex(this);
+        }
+        return edgeIndex;
+    }
+
+    // Candidate graph adjacency in compressed rows, with the edge ids of getEdgeIndex.
+    public CandidateGraph getCandidateGraph() {
+        if (candidateGraph == null) {
+            candidateGraph = new CandidateGraph(getGraphVertices(), getEdgeIndex());
+        }
+        return candidateGraph;
+    }
+
+    private void resetEdgeIndex() {
+        edgeIndex = null;
+        candidateGraph = null;
+    }
+
     public HashMap<Edge, int[]> getGraphEdgeRoutes() {
         if (graphEdgeRoutes == null) {
             generateCandidateGraph();
@@ -236,12 +353,14 @@ public class DataStorer {
             return 0;
         } else if (getNeighborNum(cell1, cell2) >= 0 && getNeighborNum(cell1, cell2) < 8) {
             if (type.equals("r")) {
-                return routingCosts[cell1][getNeighborNum(cell1, cell2)];
+                return getRoutingCosts().getCost(cell1, getNeighborNum(cell1, cell2));
             } else if (type.equals("c")) {
-                if (rightOfWayCosts != null) {
-                    return constructionCosts[cell1][getNeighborNum(cell1, cell2)] + rightOfWayCosts[cell1][getNeighborNum(cell1, cell2)];
+                CostRaster rowCosts = getRightOfWayCosts();
+                CostRaster conCosts = getConstructionCosts();
+                if (rowCosts != null) {
+                    return conCosts.getCost(cell1, getNeighborNum(cell1, cell2)) + rowCosts.getCost(cell1, getNeighborNum(cell1, cell2));
                 } else {
-                    return constructionCosts[cell1][getNeighborNum(cell1, cell2)];
+                    return conCosts.getCost(cell1, getNeighborNum(cell1, cell2));
                 }
             }
         }
@@ -250,14 +369,14 @@ public class DataStorer {
 
     public double getEdgeRightOfWayCost(int cell1, int cell2) {
         // Catch if right of way costs are not used.
-        if (rightOfWayCosts == null) {
+        if (getRightOfWayCosts() == null) {
             return 0;
         }
 
         if (cell1 == cell2) {
             return 0;
         } else if (getNeighborNum(cell1, cell2) >= 0 && getNeighborNum(cell1, cell2) < 8) {
-            return rightOfWayCosts[cell1][getNeighborNum(cell1, cell2)];
+            return getRightOfWayCosts().getCost(cell1, getNeighborNum(cell1, cell2));
         }
         return Double.MAX_VALUE;
     }
@@ -266,7 +385,7 @@ public class DataStorer {
         if (cell1 == cell2) {
             return 0;
         } else if (getNeighborNum(cell1, cell2) >= 0 && getNeighborNum(cell1, cell2) < 8) {
-            return constructionCosts[cell1][getNeighborNum(cell1, cell2)];
+            return getConstructionCosts().getCost(cell1, getNeighborNum(cell1, cell2));
         }
         return Double.MAX_VALUE;
     }
@@ -360,7 +479,7 @@ public class DataStorer {
         if (cell1 == cell2) {
             return 0;
         } else if (getNeighborNum(cell1, cell2) >= 0 && getNeighborNum(cell1, cell2) < 8) {
-            return modifiedRoutingCosts[cell1][getNeighborNum(cell1, cell2)];
+            return getModifiedRoutingCosts().getCost(cell1, getNeighborNum(cell1, cell2));
         }
         return Double.MAX_VALUE;
     }
@@ -369,10 +488,31 @@ public class DataStorer {
         if (cell1 == cell2) {
 
         } else if (getNeighborNum(cell1, cell2) >= 0 && getNeighborNum(cell1, cell2) < 8) {
-            modifiedRoutingCosts[cell1][getNeighborNum(cell1, cell2)] = edgeCostModification * routingCosts[cell1][getNeighborNum(cell1, cell2)];
+            int neighborNum = getNeighborNum(cell1, cell2);
+            CostRaster modifiedCosts = getModifiedRoutingCosts();
+            modifiedCosts.setCost(cell1, neighborNum, edgeCostModification * modifiedCosts.getBase().getCost(cell1, neighborNum));
+            if (edgeCostModification < minRoutingCostModification) {
+                lowerMinRoutingCostModification(edgeCostModification);
+            }
         }
     }
 
+    private synchronized void lowerMinRoutingCostModification(double edgeCostModification) {
+        minRoutingCostModification = Math.min(minRoutingCostModification, edgeCostModification);
+    }
+
+    // Drop every routing cost modification, as if no route had been discounted yet.
+    public void clearModifiedRoutingCosts() {
+        getModifiedRoutingCosts().clearChanges();
+        minRoutingCostModification = 1;
+    }
+
+    // No modified routing cost is below this factor times its routing cost, whichever search
+    // modified it. A* scales its distance bound by it.
+    public double getMinRoutingCostModification() {
+        return minRoutingCostModification;
+    }
+
     public int sourceNum(int vertex) {
         for (int i = 0; i < sources.length; i++) {
             if (vertex == sources[i].getCellNum()) {
@@ -407,23 +547,6 @@ public class DataStorer {
         return true;
     }
 
-    public HashMap<Integer, HashSet<Integer>> getGraphNeighbors() {
-        HashMap<Integer, HashSet<Integer>> graphNeighbors = new HashMap<>();
-        for (Edge e : graphEdgeCosts.keySet()) {
-            int v1 = e.v1;
-            int v2 = e.v2;
-            if (!graphNeighbors.containsKey(v1)) {
-                graphNeighbors.put(v1, new HashSet<>());
-            }
-            if (!graphNeighbors.containsKey(v2)) {
-                graphNeighbors.put(v2, new HashSet<>());
-            }
-            graphNeighbors.get(v1).add(v2);
-            graphNeighbors.get(v2).add(v1);
-        }
-        return graphNeighbors;
-    }
-
     // Get cell location of neighbor neighborNum of centerCell.
     public int getNeighbor(int centerCell, int neighborNum) {
         // NOTE: Neighbor numbering starts in upper left as 0 and goes in clockwise direction.
@@ -463,6 +586,18 @@ public class DataStorer {
         return height;
     }
 
+    public double getLowerLeftX() {
+        return lowerLeftX;
+    }
+
+    public double getLowerLeftY() {
+        return lowerLeftY;
+    }
+
+    public double getCellSize() {
+        return cellSize;
+    }
+
     public Source[] getSources() {
         return sources;
     }
@@ -491,17 +626,96 @@ public class DataStorer {
         return priceConfiguration;
     }
 
-    public double[][] getConstructionCosts() {
+    public CostRaster getConstructionCosts() {
+        if (constructionCosts == null) {
+            constructionCosts = dataInOut.loadConstructionCosts();
+            fitCostMemoryBudget(0);
+        }
+        planeUses[0] = ++costUses;
         return constructionCosts;
     }
 
-    public double[][] getRoutingCosts() {
+    public boolean isConstructionCostsLoaded() {
+        return constructionCosts != null;
+    }
+
+    public boolean isRightOfWayCostsLoaded() {
+        return rightOfWayLoaded;
+    }
+
+    public CostRaster getRightOfWayCosts() {
+        if (!rightOfWayLoaded) {
+            rightOfWayCosts = dataInOut.loadRightOfWayCosts();
+            rightOfWayLoaded = true;
+            fitCostMemoryBudget(1);
+        }
+        planeUses[1] = ++costUses;
+        return rightOfWayCosts;
+    }
+
+    public CostRaster getRoutingCosts() {
         if (routingCosts == null) {
-            dataInOut.loadCosts();
+            setRoutingCosts(dataInOut.loadRoutingCosts());
+            fitCostMemoryBudget(2);
         }
+        planeUses[2] = ++costUses;
         return routingCosts;
     }
 
+    public CostRaster getModifiedRoutingCosts() {
+        if (modifiedRoutingCosts == null) {
+            getRoutingCosts();
+        }
+        return modifiedRoutingCosts;
+    }
+
+    // Unload least recently used cost planes, other than the one just loaded, until the loaded
+    // planes fit in the budget. Construction and right of way costs are used together for edge
+    // costs, so loading one never unloads the other. Routing costs stay while edge costs are
+    // modified, and planes mapped from the cost cache take no memory of their own.
+    private void fitCostMemoryBudget(int loadedPlane) {
+        if (costMemoryBudget <= 0) {
+            return;
+        }
+        CostRaster[] planes = {constructionCosts, rightOfWayCosts, routingCosts};
+        long usedBytes = 0;
+        for (CostRaster plane : planes) {
+            if (plane != null) {
+                usedBytes += plane.getAllocatedBytes();
+            }
+        }
+
+        while (usedBytes > costMemoryBudget) {
+            int oldest = -1;
+            for (int i = 0; i < 3; i++) {
+                boolean pinned = (i == 2 && modifiedRoutingCosts != null && modifiedRoutingCosts.getNumChanged() > 0)
+                        || (i < 2 && loadedPlane < 2);
+                if (i != loadedPlane && planes[i] != null && planes[i].getAllocatedBytes() > 0 && !pinned
+                        && (oldest == -1 || planeUses[i] < planeUses[oldest])) {
+                    oldest = i;
+                }
+            }
+            if (oldest == -1) {
+                if (!costMemoryBudgetWarned) {
+                    System.out.println("Cost memory budget of " + costMemoryBudget + " bytes cannot hold the cost planes in use, which take " + usedBytes + " bytes.");
+                    costMemoryBudgetWarned = true;
+                }
+                return;
+            }
+            usedBytes -= planes[oldest].getAllocatedBytes();
+            planes[oldest] = null;
+            if (oldest == 0) {
+                constructionCosts = null;
+            } else if (oldest == 1) {
+                rightOfWayCosts = null;
+                rightOfWayLoaded = false;
+            } else {
+                routingCosts = null;
+                modifiedRoutingCosts = null;
+            }
+        }
+    }
+
     // Data element set methods
     public void setWidth(int width) {
         this.width = width;
@@ -523,32 +737,57 @@ public class DataStorer {
         this.cellSize = cellSize;
     }
 
-    public void setRightOfWayCosts(double[][] rightOfWayCosts) {
+    public boolean isSinglePrecisionCosts() {
+        return singlePrecisionCosts;
+    }
+
+    public long getCostMemoryBudget() {
+        return costMemoryBudget;
+    }
+
+    // Bytes the loaded cost planes may take before unused ones are unloaded, 0 for no limit.
+    public void setCostMemoryBudget(long costMemoryBudget) {
+        this.costMemoryBudget = costMemoryBudget;
+        costMemoryBudgetWarned = false;
+    }
+
+    public int getCostParserThreads() {
+        return costParserThreads;
+    }
+
+    // Threads used to parse cost files, 0 for the line by line reader.
+    public void setCostParserThreads(int costParserThreads) {
+        this.costParserThreads = costParserThreads;
+    }
+
+    // Store loaded cost rasters as floats instead of doubles.
+    public void setSinglePrecisionCosts(boolean singlePrecisionCosts) {
+        this.singlePrecisionCosts = singlePrecisionCosts;
+    }
+
+    public void setRightOfWayCosts(CostRaster rightOfWayCosts) {
         this.rightOfWayCosts = rightOfWayCosts;
+        rightOfWayLoaded = true;
     }
 
-    public void setConstructionCosts(double[][] constructionCosts) {
+    public void setConstructionCosts(CostRaster constructionCosts) {
         this.constructionCosts = constructionCosts;
     }
 
-    public void setRoutingCosts(double[][] routingCosts) {
+    public void setRoutingCosts(CostRaster routingCosts) {
         this.routingCosts = routingCosts;
-
-        modifiedRoutingCosts = new double[routingCosts.length][];
-        for (int i = 0; i < routingCosts.length; i++) {
-            double[] temp = routingCosts[i];
-            int tempLength = temp.length;
-            modifiedRoutingCosts[i] = new double[tempLength];
-            System.arraycopy(temp, 0, modifiedRoutingCosts[i], 0, tempLength);
-        }
+        modifiedRoutingCosts = new CostRaster(routingCosts);
+        minRoutingCostModification = 1;
     }
 
     public void setSources(Source[] sources) {
         this.sources = sources;
+        sourceSinkCellLocations = null;
     }
 
     public void setSinks(Sink[] sinks) {
         this.sinks = sinks;
+        sourceSinkCellLocations = null;
     }
 
     public void setLinearComponents(LinearComponent[] linearComponents) {
@@ -557,22 +796,28 @@ public class DataStorer {
 
     public void setGraphVertices(int[] vertices) {
         graphVertices = vertices;
+        candidateGraph = null;
     }
 
     public void setGraphEdgeCosts(HashMap<Edge, Double> edgeCosts) {
         graphEdgeCosts = edgeCosts;
+        resetEdgeIndex();
     }
 
     public void setGraphEdgeConstructionCosts(HashMap<Edge, Double> constructionCosts) {
         graphEdgeConstructionCosts = constructionCosts;
+        resetEdgeIndex();
     }
 
     public void setGraphEdgeRightOfWayCosts(HashMap<Edge, Double> rowCosts) {
         graphEdgeRightOfWayCosts = rowCosts;
+        resetEdgeIndex();
     }
 
     public void setGraphEdgeRoutes(HashMap<Edge, int[]> edgeRoutes) {
         graphEdgeRoutes = edgeRoutes;
+        graphEdgeLengths = null;
+        resetEdgeIndex();
     }
 
     public void setGraphSourceSinkPaths(HashMap<Edge, ArrayList<Edge>> routes) {
@@ -583,6 +828,22 @@ public class DataStorer {
         delaunayPairs = pairs;
     }
 
+    public Triangulation getTriangulation() {
+        return triangulation;
+    }
+
+    public void setTriangulation(Triangulation triangulation) {
+        this.triangulation = triangulation;
+    }
+
+    public HashMap<Edge, int[]> getDelaunayPairRoutes() {
+        return delaunayPairRoutes;
+    }
+
+    public void setDelaunayPairRoutes(HashMap<Edge, int[]> pairRoutes) {
+        delaunayPairRoutes = pairRoutes;
+    }
+
     public void setSolver(Solver s) {
         solver = s;
 
@@ -617,4 +878,9 @@ public class DataStorer {
     public Solution loadSolution(String solutionPath) {
         return dataInOut.loadSolution(solutionPath);
     }
+
+    // Number of costs the parallel cost parser and the line readers disagree on.
+    public long checkCostParser() {
+        return dataInOut.checkCostParser();
+    }
 }
@@ -0,0 +1,181 @@
+package dataStore;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Dense ids for the candidate graph edges, in MPS model order (lower, then
+ * higher vertex). Directed edge 2 * id runs from getEdge(id).v1 to
+ * getEdge(id).v2 and 2 * id + 1 runs back, as in the y and p columns of the
+ * models. Edges are looked up by a packed long key (lower vertex in the high
+ * half) in an open addressing table, so lookups neither allocate nor depend
+ * on Edge.hashCode. Per edge values are kept as arrays indexed by id; costs
+ * are filled in when the index is built, routes and lengths on first use.
+ * Models written before content hashes used another edge order, so their
+ * solutions are not decoded through this index.
+ *
+ * @author yaw
+ */
+public class EdgeIndex {
+
+    private static final long EMPTY = -1;
+
+    private DataStorer data;
+    private Edge[] edges;
+    private long[] keys;    // Open addressing table of packed keys and their ids
+    private int[] ids;
+    private int shift;
+
+    private double[] constructionCosts;
+    private double[] rightOfWayCosts;
+    private double[] costs;
+    private double[] lengths;
+    private int[][] routes;
+
+    public EdgeIndex(DataStorer data) {
+        this.data = data;
+        HashMap<Edge, Double> edgeConstructionCosts = data.getGraphEdgeConstructionCosts();
+        HashMap<Edge, Double> edgeRightOfWayCosts = data.getGraphEdgeRightOfWayCosts();
+
+        // Order edges by their packed keys, which is lower, then higher vertex.
+        long[] orderedKeys = new long[edgeConstructionCosts.size()];
+        HashMap<Long, Edge> keyToEdge = new HashMap<>();
+        int n = 0;
+        for (Edge edge : edgeConstructionCosts.keySet()) {
+            orderedKeys[n] = key(edge.v1, edge.v2);
+            keyToEdge.put(orderedKeys[n], edge);
+            n++;
+        }
+        Arrays.sort(orderedKeys);
+        edges = new Edge[n];
+        for (int id = 0; id < n; id++) {
+            edges[id] = keyToEdge.get(orderedKeys[id]);
+        }
+
+        // Table at most half full.
+        int capacity = 2;
+        while (capacity < 2 * n) {
+            capacity *= 2;
+        }
+        shift = 64 - Integer.numberOfTrailingZeros(capacity);
+        keys = new long[capacity];
+        ids = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        for (int id = 0; id < n; id++) {
+            int slot = slot(orderedKeys[id]);
+            while (keys[slot] != EMPTY) {
+                slot = (slot + 1) & (capacity - 1);
+            }
+            keys[slot] = orderedKeys[id];
+            ids[slot] = id;
+        }
+
+        constructionCosts = new double[n];
+        rightOfWayCosts = new double[n];
+        for (int id = 0; id < n; id++) {
+            constructionCosts[id] = edgeConstructionCosts.get(edges[id]);
+            Double rightOfWayCost = edgeRightOfWayCosts != null ? edgeRightOfWayCosts.get(edges[id]) : null;
+            rightOfWayCosts[id] = rightOfWayCost != null ? rightOfWayCost : 0;
+        }
+    }
+
+    // Key of the undirected edge between two cells.
+    public static long key(int v1, int v2) {
+        return ((long) Math.min(v1, v2) << 32) | (Math.max(v1, v2) & 0xffffffffL);
+    }
+
+    private int slot(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+
+    // Id of the edge between two cells, -1 if it is not in the graph.
+    public int getId(int v1, int v2) {
+        long key = key(v1, v2);
+        int slot = slot(key);
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                return ids[slot];
+            }
+            slot = (slot + 1) & (keys.length - 1);
+        }
+        return -1;
+    }
+
+    public int getId(Edge edge) {
+        return getId(edge.v1, edge.v2);
+    }
+
+    // Id of the directed edge from one cell to another, -1 if it is not in the graph.
+    public int getDirectedId(int from, int to) {
+        int id = getId(from, to);
+        if (id < 0) {
+            return -1;
+        }
+        return edges[id].v1 == from ? 2 * id : 2 * id + 1;
+    }
+
+    public int getFrom(int directedId) {
+        Edge edge = edges[directedId / 2];
+        return directedId % 2 == 0 ? edge.v1 : edge.v2;
+    }
+
+    public int getTo(int directedId) {
+        Edge edge = edges[directedId / 2];
+        return directedId % 2 == 0 ? edge.v2 : edge.v1;
+    }
+
+    public int size() {
+        return edges.length;
+    }
+
+    public Edge getEdge(int id) {
+        return edges[id];
+    }
+
+    // Edges by id. Shared, not to be modified.
+    public Edge[] getEdges() {
+        return edges;
+    }
+
+    public double[] getConstructionCosts() {
+        return constructionCosts;
+    }
+
+    public double[] getRightOfWayCosts() {
+        return rightOfWayCosts;
+    }
+
+    public double[] getCosts() {
+        if (costs == null) {
+            costs = column(data.getGraphEdgeCosts());
+        }
+        return costs;
+    }
+
+    public double[] getLengths() {
+        if (lengths == null) {
+            lengths = column(data.getGraphEdgeLengths());
+        }
+        return lengths;
+    }
+
+    public int[][] getRoutes() {
+        if (routes == null) {
+            HashMap<Edge, int[]> edgeRoutes = data.getGraphEdgeRoutes();
+            routes = new int[edges.length][];
+            for (int id = 0; id < edges.length; id++) {
+                routes[id] = edgeRoutes.get(edges[id]);
+            }
+        }
+        return routes;
+    }
+
+    private double[] column(HashMap<Edge, Double> values) {
+        double[] column = new double[edges.length];
+        for (int id = 0; id < edges.length; id++) {
+            Double value = values.get(edges[id]);
+            column[id] = value != null ? value : 0;
+        }
+        return column;
+    }
+}
@@ -193,6 +193,14 @@ public class Solution {
         return edgeCosts;
     }
 
+    public HashMap<Edge, Integer> getEdgeTrends() {
+        return edgeTrends;
+    }
+
+    public HashMap<Sink, Integer> getSinkNumWells() {
+        return sinkNumWells;
+    }
+
     public int getNumOpenedSources() {
         return sourceCaptureAmounts.keySet().size();
     }
@@ -5,6 +5,7 @@ import com.bbn.openmap.dataAccess.shape.EsriPolyline;
 import com.bbn.openmap.dataAccess.shape.EsriPolylineList;
 import com.bbn.openmap.dataAccess.shape.EsriShapeExport;
 import com.bbn.openmap.omGraphics.OMGraphic;
+import dataStore.CostRaster;
 import dataStore.DataStorer;
 import dataStore.Edge;
 import dataStore.Sink;
@@ -13,13 +14,9 @@ import dataStore.Source;
 import java.awt.image.BufferedImage;
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
@@ -31,8 +28,11 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.embed.swing.SwingFXUtils;
+import javafx.scene.chart.LineChart;
+import javafx.scene.chart.XYChart;
 import javafx.scene.control.ChoiceBox;
 import javafx.scene.control.Label;
 import javafx.scene.control.TextArea;
@@ -47,8 +47,13 @@ import javafx.scene.shape.Line;
 import javafx.scene.shape.Rectangle;
 import javafx.scene.shape.StrokeLineCap;
 import javax.imageio.ImageIO;
+import solver.GreedyHeuristic;
+import solver.MIPStartWriter;
+import solver.MPSFileWriter;
 import solver.MPSWriter;
 import solver.Solver;
+import solver.SolverProgress;
+import solver.SolverScheduler;
 
 import static utilities.Utilities.*;
 
@@ -75,10 +80,16 @@ public class ControlActions {
     private Pane solutionLayer;
     private TextArea messenger;
     private Gui gui;
+    private SolverScheduler solverScheduler = new SolverScheduler(1);
+    private LineChart<Number, Number> gapChart;
+    private Label progressValue;
+    private String selectedRun;
 
     public ControlActions(ImageView map, Gui gui) {
         this.map = map;
         this.gui = gui;
+        solverScheduler.setJobListener(this::solverJobStopped);
+        solverScheduler.setProgressListener(this::solverProgressed);
     }
 
     public void toggleCostSurface(Boolean show, Rectangle background) {
@@ -90,13 +101,13 @@ public class ControlActions {
                 img = new Image("file:" + data.getCostSurfacePath());
             } else {
                 // Create image from routing costs
-                double[][] routingCosts = data.getRoutingCosts();
+                CostRaster routingCosts = data.getRoutingCosts();
                 Double[] costSurface = new Double[data.getWidth() * data.getHeight() + 1];
-                for (int i = 0; i < routingCosts.length; i++) {
+                for (int i = 0; i <= routingCosts.getNumCells(); i++) {
                     costSurface[i] = 0.0;
-                    for (int j = 0; j < routingCosts[i].length; j++) {
-                        if (routingCosts[i][j] != Double.MAX_VALUE) {
-                            costSurface[i] += routingCosts[i][j];
+                    for (int j = 0; j < 8; j++) {
+                        if (routingCosts.getCost(i, j) != Double.MAX_VALUE) {
+                            costSurface[i] += routingCosts.getCost(i, j);
                         }
                     }
                 }
@@ -282,6 +293,12 @@ public class ControlActions {
         }
     }
 
+    public void updateCandidateGraph() {
+        if (scenario != "") {
+            data.updateCandidateGraph();
+        }
+    }
+
     public void generateMPSFile(String crf, String numYears, String modelParamValue, String modelVersion) {
         if (scenario != "") {
             System.out.println("Writing MPS File...");
@@ -291,100 +308,253 @@ public class ControlActions {
         }
     }
 
-    public void runCPLEX() {
-        // Check if CPLEX exists.
-        try {
-            Runtime r = Runtime.getRuntime();
-            r.exec("cplex");
-
-            // Determine model version
-            String mipPath = basePath + "/" + dataset + "/Scenarios/" + scenario + "/MIP/";
-            String modelVersion = "";
-            String run = "";
-            String mpsFileName = "";
-            for (File f : new File(mipPath).listFiles()) {
-                if (f.getName().endsWith(".mps")) {
+    // Write one model per value of the price configuration into its own Results directory.
+    public void generateMPSSweep(String crf, String numYears, String modelVersion) {
+        if (scenario != "") {
+            if (data.getPriceConfiguration() == null) {
+                data.loadPriceConfiguration();
+            }
+            double[] values = data.getPriceConfiguration();
+            if (values == null || values.length == 0) {
+                messenger.setText("Error: No values in Configurations/priceInput.csv.");
+                return;
+            }
+            System.out.println("Writing MPS Files for " + values.length + " values...");
+            if (modelVersion.equals("c") || modelVersion.equals("p")) {
+                MPSWriter.writeCapPriceSweep(data, Double.parseDouble(crf), Double.parseDouble(numYears), values, basePath, dataset, scenario, modelVersion, Runtime.getRuntime().availableProcessors());
+            }
+        }
+    }
+
+    // Queue the MPS file in the MIP directory on the solver scheduler, in a new Results directory.
+    // Unless resolve is set, a model already solved to optimality is not solved again.
+    public void runCPLEX(boolean resolve) {
+        // Determine model version
+        String mipPath = basePath + "/" + dataset + "/Scenarios/" + scenario + "/MIP/";
+        String run = "";
+        File mpsFile = null;
+        File[] mips = new File(mipPath).listFiles();
+        if (mips != null) {
+            for (File f : mips) {
+                if (f.getName().endsWith(".mps") || f.getName().endsWith(".mps.gz")) {
                     if (f.getName().startsWith("cap")) {
-                        modelVersion = "c";
                         run = "cap";
-                        mpsFileName = "cap.mps";
+                        mpsFile = f;
                     } else if (f.getName().startsWith("price")) {
-                        modelVersion = "p";
                         run = "price";
-                        mpsFileName = "price.mps";
+                        mpsFile = f;
                     }
                 }
             }
+        }
+        if (mpsFile == null) {
+            messenger.setText("Error: No MPS file in " + mipPath);
+            return;
+        }
 
-            // Copy mps file and make command files.
-            DateFormat dateFormat = new SimpleDateFormat("ddMMyyy-HHmmssss");
-            Date date = new Date();
-            run += dateFormat.format(date);
-            File solutionDirectory = new File(basePath + "/" + dataset + "/Scenarios/" + scenario + "/Results/" + run);
-
-            String os = System.getProperty("os.name");
-            try {
-                solutionDirectory.mkdir();
-
-                // Copy MPS file into results file.
-                mipPath += mpsFileName;
-
-                Path from = Paths.get(mipPath);
-                Path to = Paths.get(solutionDirectory + "/" + mpsFileName);
-                Files.copy(from, to, StandardCopyOption.REPLACE_EXISTING);
-
-                // Make OS script file and cplex commands file.
-                if (os.toLowerCase().contains("mac")) {
-                    PrintWriter cplexCommands = new PrintWriter(solutionDirectory + "/cplexCommands.txt");
-                    cplexCommands.println("set logfile *");
-                    cplexCommands.println("read " + solutionDirectory.getAbsolutePath() + "/" + mpsFileName);
-                    cplexCommands.println("opt");
-                    cplexCommands.println("write " + solutionDirectory.getAbsolutePath() + "/solution.sol");
-                    cplexCommands.println("quit");
-                    cplexCommands.close();
-
-                    File osCommandsFile = new File(solutionDirectory + "/osCommands.sh");
-                    PrintWriter osCommands = new PrintWriter(osCommandsFile);
-                    osCommands.println("#!/bin/sh");
-                    osCommands.println("cplex < " + solutionDirectory.getAbsolutePath() + "/cplexCommands.txt");
-                    osCommands.close();
-                    osCommandsFile.setExecutable(true);
-                } else if (os.toLowerCase().contains("windows")) {
-                    PrintWriter cplexCommands = new PrintWriter(solutionDirectory + "/cplexCommands.txt");
-                    cplexCommands.println("read " + mpsFileName);
-                    cplexCommands.println("opt");
-                    cplexCommands.println("write solution.sol");
-                    cplexCommands.println("quit");
-                    cplexCommands.close();
-
-                    File osCommandsFile = new File(solutionDirectory + "/osCommands.bat");
-                    PrintWriter osCommands = new PrintWriter(osCommandsFile);
-                    osCommands.println("@echo off");
-                    osCommands.println("cplex < cplexCommands.txt");
-                    osCommands.close();
-                    osCommandsFile.setExecutable(true);
+        // Skip the run if an earlier run already solved the same model.
+        File solvedRun = resolve ? null : findSolvedRun(MPSFileWriter.readContentHash(mpsFile));
+        if (solvedRun != null) {
+            messenger.setText("Model unchanged, already solved to optimality in Results/" + solvedRun.getName() + ". Select Re-solve Solved Models to solve it again.");
+            return;
+        }
+
+        // Warm start from the latest solved run of the same model version.
+        File startRun = findLatestSolvedRun(run);
+
+        DateFormat dateFormat = new SimpleDateFormat("ddMMyyy-HHmmssss");
+        Date date = new Date();
+        run += dateFormat.format(date);
+        File solutionDirectory = new File(basePath + "/" + dataset + "/Scenarios/" + scenario + "/Results/" + run);
+        try {
+            String warmStart = "";
+            if (startRun != null) {
+                solutionDirectory.mkdirs();
+                Solution start = data.loadSolution(startRun.getAbsolutePath());
+                if (MIPStartWriter.writeMIPStart(data, start, mpsFile, new File(solutionDirectory, MIPStartWriter.MIP_START_FILE)) > 0) {
+                    warmStart = ", warm started from Results/" + startRun.getName();
                 }
-            } catch (FileNotFoundException e) {
-            } catch (IOException e) {
-            }
-
-            try {
-                if (os.toLowerCase().contains("mac")) {
-                    String[] args = new String[]{"/usr/bin/open", "-a", "Terminal", solutionDirectory.getAbsolutePath() + "/osCommands.sh"};
-                    ProcessBuilder pb = new ProcessBuilder(args);
-                    pb.directory(solutionDirectory);
-                    Process p = pb.start();
-                } else if (os.toLowerCase().contains("windows")) {
-                    String[] args = new String[]{"cmd.exe", "/C", "start", solutionDirectory.getAbsolutePath() + "/osCommands.bat"};
-                    ProcessBuilder pb = new ProcessBuilder(args);
-                    pb.directory(solutionDirectory);
-                    Process p = pb.start();
+            }
+            solverScheduler.submit(mpsFile, solutionDirectory);
+            messenger.setText("Solving in Results/" + run + warmStart + " (" + solverScheduler.getNumActiveJobs() + " solver jobs queued or running)");
+        } catch (IOException e) {
+            messenger.setText("Error: " + e.getMessage());
+        }
+    }
+
+    // Solve the model in the MIP directory with the greedy heuristic and save the solution as a run
+    // in Results, where it loads like a solver run and warm starts the next solve of the model.
+    public void runGreedy(String crf, String numYears, String modelParamValue, String modelVersion) {
+        if (scenario == "" || !(modelVersion.equals("c") || modelVersion.equals("p"))) {
+            return;
+        }
+        String run = modelVersion.equals("c") ? "cap" : "price";
+        String mipPath = basePath + "/" + dataset + "/Scenarios/" + scenario + "/MIP/";
+        File mpsFile = null;
+        File[] mips = new File(mipPath).listFiles();
+        if (mips != null) {
+            for (File f : mips) {
+                if ((f.getName().endsWith(".mps") || f.getName().endsWith(".mps.gz")) && f.getName().startsWith(run)) {
+                    mpsFile = f;
                 }
-            } catch (IOException e) {
             }
+        }
+        if (mpsFile == null) {
+            messenger.setText("Error: No " + run + " MPS file in " + mipPath + ", generate one first.");
+            return;
+        }
+
+        long startTime = System.currentTimeMillis();
+        GreedyHeuristic heuristic = new GreedyHeuristic(data, Double.parseDouble(crf), Double.parseDouble(numYears));
+        Solution soln = heuristic.solve(modelVersion, Double.parseDouble(modelParamValue));
+        long elapsed = System.currentTimeMillis() - startTime;
+
+        DateFormat dateFormat = new SimpleDateFormat("ddMMyyy-HHmmssss");
+        run += GreedyHeuristic.RUN_NAME + dateFormat.format(new Date());
+        File solutionDirectory = new File(basePath + "/" + dataset + "/Scenarios/" + scenario + "/Results/" + run);
+        solutionDirectory.mkdirs();
+        try {
+            Files.copy(mpsFile.toPath(), new File(solutionDirectory, mpsFile.getName()).toPath(), StandardCopyOption.REPLACE_EXISTING);
         } catch (IOException e) {
-            messenger.setText("Error: Make sure CPLEX is installed and in System PATH.");
+            messenger.setText("Error: " + e.getMessage());
+            return;
+        }
+        if (MIPStartWriter.writeSolution(heuristic.getColumnValues(), mpsFile, new File(solutionDirectory, SolverScheduler.SOLUTION_FILE)) == 0) {
+            messenger.setText("Error: Could not write the heuristic solution to Results/" + run);
+            return;
+        }
+        messenger.setText(String.format("Greedy heuristic: %.4f MT/y captured for %.4f per year in %.2f s, saved in Results/%s", soln.getAnnualCaptureAmount(),
+                soln.getTotalCost(), elapsed / 1000.0, run));
+    }
+
+    // Apply the solver job settings to the scheduler. Threads, memory and the time limit may be 0
+    // for the solver defaults. The command is split on whitespace. Returns false, with the error in
+    // the messenger, if a setting is not a whole number.
+    public boolean setSolverSettings(String maxConcurrentJobs, String threadsPerJob, String memoryPerJob, String timeoutSeconds, String command) {
+        try {
+            int numJobs = Integer.parseInt(maxConcurrentJobs.trim());
+            int numThreads = Integer.parseInt(threadsPerJob.trim());
+            int memory = Integer.parseInt(memoryPerJob.trim());
+            long timeout = Long.parseLong(timeoutSeconds.trim());
+            if (numJobs < 1 || numThreads < 0 || memory < 0 || timeout < 0) {
+                messenger.setText("Error: Solver settings must not be negative, and at least one job must run.");
+                return false;
+            }
+            solverScheduler.setMaxConcurrentJobs(numJobs);
+            solverScheduler.setThreadsPerJob(numThreads);
+            solverScheduler.setMemoryPerJob(memory);
+            solverScheduler.setTimeoutSeconds(timeout);
+        } catch (NumberFormatException e) {
+            messenger.setText("Error: Solver settings must be whole numbers. " + e.getMessage());
+            return false;
+        }
+        if (!command.trim().isEmpty()) {
+            solverScheduler.setCommand(command.trim().split("\\s+"));
+        }
+        return true;
+    }
+
+    // Stop every queued and running solver job.
+    public void cancelSolves() {
+        solverScheduler.cancelAll();
+    }
+
+    public SolverScheduler getSolverScheduler() {
+        return solverScheduler;
+    }
+
+    // Cancel the solver job of a run if it is still queued or running.
+    public void stopRun(String run) {
+        for (SolverScheduler.Job job : solverScheduler.getJobs()) {
+            if (job.getRunDirectory().getName().equals(run)) {
+                job.cancel();
+            }
+        }
+    }
+
+    // Add node log samples of the selected run to the progress display as they arrive.
+    private void solverProgressed(SolverScheduler.Job job, SolverProgress.Sample sample) {
+        Platform.runLater(() -> {
+            if (gapChart != null && job.getRunDirectory().getName().equals(selectedRun)) {
+                addProgressSample(sample);
+            }
+        });
+    }
+
+    // Show the stored progress of a run.
+    private void displaySolverProgress(String run) {
+        selectedRun = run;
+        if (gapChart == null) {
+            return;
+        }
+        gapChart.getData().clear();
+        gapChart.getData().add(new XYChart.Series<Number, Number>());
+        progressValue.setText("-");
+        if (run != null && !run.equals("None")) {
+            File runDirectory = new File(basePath + "/" + dataset + "/Scenarios/" + scenario + "/Results/" + run);
+            for (SolverProgress.Sample sample : SolverProgress.load(runDirectory).getSamples()) {
+                addProgressSample(sample);
+            }
+        }
+    }
+
+    private void addProgressSample(SolverProgress.Sample sample) {
+        if (!Double.isNaN(sample.getGap())) {
+            gapChart.getData().get(0).getData().add(new XYChart.Data<Number, Number>(sample.getSeconds(), sample.getGap()));
         }
+        progressValue.setText(String.format("Gap %s, %d nodes, %.0f s\nIncumbent %s\nBound %s", Double.isNaN(sample.getGap()) ? "-" : String.format("%.2f%%", sample.getGap()),
+                sample.getNodes(), sample.getSeconds(), Double.isNaN(sample.getIncumbent()) ? "-" : String.format("%.4f", sample.getIncumbent()),
+                Double.isNaN(sample.getBestBound()) ? "-" : String.format("%.4f", sample.getBestBound())));
+    }
+
+    // Report stopped solver jobs in the messenger.
+    private void solverJobStopped(SolverScheduler.Job job) {
+        Platform.runLater(() -> {
+            String run = job.getRunDirectory().getName();
+            if (job.getStatus() == SolverScheduler.Status.FAILED && job.getExitCode() == null) {
+                messenger.setText("Error: Make sure CPLEX is installed and in System PATH. " + job.getMessage());
+            } else {
+                messenger.setText("Solver job " + run + ": " + job.getStatus() + (job.getExitCode() != null ? ", exit status " + job.getExitCode() : "")
+                        + String.format(", %.1f s", job.getElapsedMillis() / 1000.0));
+            }
+        });
+    }
+
+    // Most recently solved Results directory whose name starts with prefix, or null.
+    private File findLatestSolvedRun(String prefix) {
+        File[] runs = new File(basePath + "/" + dataset + "/Scenarios/" + scenario + "/Results/").listFiles();
+        File latest = null;
+        long latestTime = 0;
+        if (runs != null) {
+            for (File run : runs) {
+                File solution = new File(run, SolverScheduler.SOLUTION_FILE);
+                if (run.isDirectory() && run.getName().startsWith(prefix) && solution.exists() && solution.lastModified() > latestTime) {
+                    latest = run;
+                    latestTime = solution.lastModified();
+                }
+            }
+        }
+        return latest;
+    }
+
+    // Results directory holding an optimal solution of the model with the given content hash, or
+    // null. Runs stopped at the time limit or by an error only hold an incumbent.
+    private File findSolvedRun(String contentHash) {
+        File[] runs = new File(basePath + "/" + dataset + "/Scenarios/" + scenario + "/Results/").listFiles();
+        if (contentHash == null || runs == null) {
+            return null;
+        }
+        for (File run : runs) {
+            // Heuristic solutions only start the solve of a model.
+            if (run.isDirectory() && SolverScheduler.isOptimalSolution(new File(run, SolverScheduler.SOLUTION_FILE)) && !run.getName().contains(GreedyHeuristic.RUN_NAME)) {
+                for (File f : run.listFiles()) {
+                    if ((f.getName().endsWith(".mps") || f.getName().endsWith(".mps.gz")) && contentHash.equals(MPSFileWriter.readContentHash(f))) {
+                        return run;
+                    }
+                }
+            }
+        }
+        return null;
     }
 
     public void toggleRawDelaunayDisplay(boolean show) {
@@ -447,14 +617,17 @@ public class ControlActions {
                 } else if (file.isDirectory() && file.getName().charAt(0) != '.') {
                     boolean sol = false;
                     boolean mps = false;
+                    boolean progress = false;
                     for (File subFile : file.listFiles()) {
                         if (subFile.getName().endsWith(".sol")) {
                             sol = true;
-                        } else if (subFile.getName().endsWith(".mps")) {
+                        } else if (subFile.getName().endsWith(".mps") || subFile.getName().endsWith(".mps.gz")) {
                             mps = true;
+                        } else if (subFile.getName().equals(SolverProgress.PROGRESS_FILE)) {
+                            progress = true;
                         }
                     }
-                    if (sol && mps) {
+                    if ((sol || progress) && mps) {
                         solns.add(file.getName());
                     }
                 }
@@ -469,13 +642,30 @@ public class ControlActions {
             l.setText("-");
         }
 
+        displaySolverProgress(file);
         if (file != null && !file.equals("None")) {
             String solutionPath = basePath + "/" + dataset + "/Scenarios/" + scenario + "/Results/" + file;
+            if (!file.endsWith("Agg") && !hasSolutionFile(new File(solutionPath))) {
+                return;
+            }
             Solution soln = data.loadSolution(solutionPath);
             displaySolution(file, soln, solutionValues);
         }
     }
 
+    // Whether a run directory holds a solution, rather than a solve still running or stopped early.
+    private boolean hasSolutionFile(File runDirectory) {
+        File[] files = runDirectory.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                if (f.getName().endsWith(".sol")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     public void displaySolution(String file, Solution soln, Label[] solutionValues) {
         solutionLayer.getChildren().clear();
         HashMap<Edge, int[]> graphEdgeRoutes = data.getGraphEdgeRoutes();
@@ -754,6 +944,11 @@ public class ControlActions {
         solutionLayer = layer;
     }
 
+    public void addSolverProgressDisplay(LineChart<Number, Number> chart, Label value) {
+        gapChart = chart;
+        progressValue = value;
+    }
+
     public void addRawDelaunayLayer(Pane layer) {
         rawDelaunayLayer = layer;
     }
@@ -10,6 +10,8 @@ import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.scene.Group;
 import javafx.scene.Scene;
+import javafx.scene.chart.LineChart;
+import javafx.scene.chart.NumberAxis;
 import javafx.scene.control.Button;
 import javafx.scene.control.ChoiceBox;
 import javafx.scene.control.Label;
@@ -185,7 +187,7 @@ public class Gui extends Application {
 
         //Build network buttons and add to control pane.
         Button candidateNetwork = new Button("Candidate Network");
-        candidateNetwork.setLayoutX(27);
+        candidateNetwork.setLayoutX(4);
         candidateNetwork.setLayoutY(4);
         candidateNetwork.setOnAction(new EventHandler<ActionEvent>() {
             @Override
@@ -194,10 +196,20 @@ public class Gui extends Application {
             }
         });
 
+        Button updateNetwork = new Button("Update");
+        updateNetwork.setLayoutX(126);
+        updateNetwork.setLayoutY(4);
+        updateNetwork.setOnAction(new EventHandler<ActionEvent>() {
+            @Override
+            public void handle(ActionEvent e) {
+                controlActions.updateCandidateGraph();
+            }
+        });
+
         AnchorPane buttonPane = new AnchorPane();
         buttonPane.setPrefSize(190, 30);
         buttonPane.setMinSize(0, 0);
-        buttonPane.getChildren().addAll(candidateNetwork);
+        buttonPane.getChildren().addAll(candidateNetwork, updateNetwork);
         TitledPane networkContainer = new TitledPane("Network Generation", buttonPane);
         networkContainer.setCollapsible(false);
         networkContainer.setPrefSize(192, 63);
@@ -428,13 +440,85 @@ public class Gui extends Application {
         modelContainer.setLayoutY(5);
         modelPane.getChildren().add(modelContainer);
 
+        // Solver job settings, applied to the jobs queued after they change.
+        AnchorPane solverSettingsPane = new AnchorPane();
+        solverSettingsPane.setPrefSize(192, 185);
+        solverSettingsPane.setMinSize(0, 0);
+
+        Label jobsLabel = new Label("Concurrent Jobs");
+        jobsLabel.setLayoutX(4);
+        jobsLabel.setLayoutY(8);
+        solverSettingsPane.getChildren().add(jobsLabel);
+        TextField jobsValue = new TextField("1");
+        jobsValue.setEditable(true);
+        jobsValue.setPrefColumnCount(3);
+        jobsValue.setLayoutX(123);
+        jobsValue.setLayoutY(4);
+        solverSettingsPane.getChildren().add(jobsValue);
+
+        Label threadsLabel = new Label("Threads per Job");
+        threadsLabel.setLayoutX(4);
+        threadsLabel.setLayoutY(38);
+        solverSettingsPane.getChildren().add(threadsLabel);
+        TextField threadsValue = new TextField("0");
+        threadsValue.setEditable(true);
+        threadsValue.setPrefColumnCount(3);
+        threadsValue.setLayoutX(123);
+        threadsValue.setLayoutY(34);
+        solverSettingsPane.getChildren().add(threadsValue);
+
+        Label memoryLabel = new Label("Memory (MB)");
+        memoryLabel.setLayoutX(4);
+        memoryLabel.setLayoutY(68);
+        solverSettingsPane.getChildren().add(memoryLabel);
+        TextField memoryValue = new TextField("0");
+        memoryValue.setEditable(true);
+        memoryValue.setPrefColumnCount(3);
+        memoryValue.setLayoutX(123);
+        memoryValue.setLayoutY(64);
+        solverSettingsPane.getChildren().add(memoryValue);
+
+        Label timeLimitLabel = new Label("Time Limit (s)");
+        timeLimitLabel.setLayoutX(4);
+        timeLimitLabel.setLayoutY(98);
+        solverSettingsPane.getChildren().add(timeLimitLabel);
+        TextField timeLimitValue = new TextField("0");
+        timeLimitValue.setEditable(true);
+        timeLimitValue.setPrefColumnCount(3);
+        timeLimitValue.setLayoutX(123);
+        timeLimitValue.setLayoutY(94);
+        solverSettingsPane.getChildren().add(timeLimitValue);
+
+        Label commandLabel = new Label("Command");
+        commandLabel.setLayoutX(4);
+        commandLabel.setLayoutY(128);
+        solverSettingsPane.getChildren().add(commandLabel);
+        TextField commandValue = new TextField("cplex");
+        commandValue.setEditable(true);
+        commandValue.setPrefColumnCount(7);
+        commandValue.setLayoutX(73);
+        commandValue.setLayoutY(124);
+        solverSettingsPane.getChildren().add(commandValue);
+
+        RadioButton resolveModel = new RadioButton("Re-solve Solved Models");
+        resolveModel.setLayoutX(4);
+        resolveModel.setLayoutY(158);
+        solverSettingsPane.getChildren().add(resolveModel);
+
+        TitledPane solverSettingsContainer = new TitledPane("Solver Settings", solverSettingsPane);
+        solverSettingsContainer.setCollapsible(false);
+        solverSettingsContainer.setPrefSize(192, 210);
+        solverSettingsContainer.setLayoutX(14);
+        solverSettingsContainer.setLayoutY(292);
+        modelPane.getChildren().add(solverSettingsContainer);
+
         // Solution pane.
         AnchorPane mipSolutionPane = new AnchorPane();
-        mipSolutionPane.setPrefSize(192, 100);
+        mipSolutionPane.setPrefSize(192, 133);
         mipSolutionPane.setMinSize(0, 0);
 
         Button generateSolutionFile = new Button("Generate MPS File");
-        generateSolutionFile.setLayoutX(33);
+        generateSolutionFile.setLayoutX(4);
         generateSolutionFile.setLayoutY(5);
         mipSolutionPane.getChildren().add(generateSolutionFile);
         generateSolutionFile.setOnAction(new EventHandler<ActionEvent>() {
@@ -451,6 +535,24 @@ public class Gui extends Application {
             }
         });
 
+        Button generateSweep = new Button("Sweep");
+        generateSweep.setLayoutX(130);
+        generateSweep.setLayoutY(5);
+        mipSolutionPane.getChildren().add(generateSweep);
+        generateSweep.setOnAction(new EventHandler<ActionEvent>() {
+            @Override
+            public void handle(ActionEvent e) {
+                String modelVersion = "";
+                if (capVersion.isSelected()) {
+                    modelVersion = "c";
+                } else if (priceVersion.isSelected()) {
+                    modelVersion = "p";
+                }
+
+                controlActions.generateMPSSweep(crfValue.getText(), yearValue.getText(), modelVersion);
+            }
+        });
+
         Label solverLabel = new Label("Solver:");
         solverLabel.setLayoutX(4);
         solverLabel.setLayoutY(44);
@@ -463,14 +565,50 @@ public class Gui extends Application {
         cplexSolve.setOnAction(new EventHandler<ActionEvent>() {
             @Override
             public void handle(ActionEvent e) {
-                controlActions.runCPLEX();
+                if (controlActions.setSolverSettings(jobsValue.getText(), threadsValue.getText(), memoryValue.getText(), timeLimitValue.getText(), commandValue.getText())) {
+                    controlActions.runCPLEX(resolveModel.isSelected());
+                }
+            }
+        });
+
+        Button cancelSolve = new Button("Cancel");
+        cancelSolve.setLayoutX(118);
+        cancelSolve.setLayoutY(38);
+        mipSolutionPane.getChildren().add(cancelSolve);
+        cancelSolve.setOnAction(new EventHandler<ActionEvent>() {
+            @Override
+            public void handle(ActionEvent e) {
+                controlActions.cancelSolves();
+            }
+        });
+
+        Label heuristicLabel = new Label("Heuristic:");
+        heuristicLabel.setLayoutX(4);
+        heuristicLabel.setLayoutY(77);
+        mipSolutionPane.getChildren().add(heuristicLabel);
+
+        Button greedySolve = new Button("Greedy");
+        greedySolve.setLayoutX(72);
+        greedySolve.setLayoutY(71);
+        mipSolutionPane.getChildren().add(greedySolve);
+        greedySolve.setOnAction(new EventHandler<ActionEvent>() {
+            @Override
+            public void handle(ActionEvent e) {
+                String modelVersion = "";
+                if (capVersion.isSelected()) {
+                    modelVersion = "c";
+                } else if (priceVersion.isSelected()) {
+                    modelVersion = "p";
+                }
+
+                controlActions.runGreedy(crfValue.getText(), yearValue.getText(), paramValue.getText(), modelVersion);
             }
         });
 
         // Populate MIP solution method pane.
         TitledPane mipSolutionContainer = new TitledPane("MIP Solver", mipSolutionPane);
         mipSolutionContainer.setCollapsible(false);
-        mipSolutionContainer.setPrefSize(192, 95);
+        mipSolutionContainer.setPrefSize(192, 128);
         mipSolutionContainer.setLayoutX(14);
         mipSolutionContainer.setLayoutY(158);
         modelPane.getChildren().add(mipSolutionContainer);
@@ -596,6 +734,48 @@ public class Gui extends Application {
 
         Label[] solutionValues = new Label[]{sourcesValue, sinksValue, storedValue, edgesValue, lengthValue, capT, capU, transT, transU, storT, storU, totT, totU};
 
+        // Solver progress of the selected run: MIP gap over time, updated while the run solves.
+        AnchorPane progressPane = new AnchorPane();
+        progressPane.setPrefSize(190, 200);
+        progressPane.setMinSize(0, 0);
+
+        NumberAxis timeAxis = new NumberAxis();
+        timeAxis.setLabel("Seconds");
+        NumberAxis gapAxis = new NumberAxis();
+        gapAxis.setLabel("Gap (%)");
+        LineChart<Number, Number> gapChart = new LineChart<>(timeAxis, gapAxis);
+        gapChart.setLegendVisible(false);
+        gapChart.setAnimated(false);
+        gapChart.setCreateSymbols(false);
+        gapChart.setPrefSize(190, 120);
+        gapChart.setLayoutX(0);
+        gapChart.setLayoutY(0);
+        progressPane.getChildren().add(gapChart);
+
+        Label progressValue = new Label("-");
+        progressValue.setLayoutX(4);
+        progressValue.setLayoutY(120);
+        progressPane.getChildren().add(progressValue);
+
+        Button stopRun = new Button("Stop Run");
+        stopRun.setLayoutX(110);
+        stopRun.setLayoutY(170);
+        progressPane.getChildren().add(stopRun);
+        stopRun.setOnAction(new EventHandler<ActionEvent>() {
+            @Override
+            public void handle(ActionEvent e) {
+                controlActions.stopRun((String) runChoice.getValue());
+            }
+        });
+
+        TitledPane progressContainer = new TitledPane("Solver Progress", progressPane);
+        progressContainer.setCollapsible(false);
+        progressContainer.setPrefSize(192, 225);
+        progressContainer.setLayoutX(14);
+        progressContainer.setLayoutY(350);
+        resultsPane.getChildren().add(progressContainer);
+        controlActions.addSolverProgressDisplay(gapChart, progressValue);
+
         // Run selection action.
         runChoice.getSelectionModel().selectedItemProperty().addListener(new ChangeListener<String>() {
             @Override
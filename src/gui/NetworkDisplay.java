@@ -111,12 +111,12 @@ class SceneGestures {
                 // Up for grabs.
                 canvas.getControlActions().getMessenger().setText("Cell number: " + canvas.getControlActions().displayXYToVectorized(event.getX(), event.getY()));
                 /*int cellNum = canvas.controlActions.displayXYToVectorized(event.getX(), event.getY());
-                HashMap<Integer, HashSet<Integer>> neighbors = canvas.controlActions.getData().getGraphNeighbors();
+                CandidateGraph graph = canvas.controlActions.getData().getCandidateGraph();
+                int vertex = graph.getVertex(cellNum);
                 String n = "";
-                if (neighbors.containsKey(cellNum)) {
-                    HashSet<Integer> neighborCells = neighbors.get(cellNum);
-                    for (int cell : neighborCells) {
-                        n += Integer.toString(cell) + " ";
+                if (vertex >= 0) {
+                    for (int slot = graph.getOffsets()[vertex]; slot < graph.getOffsets()[vertex + 1]; slot++) {
+                        n += Integer.toString(graph.getCell(graph.getNeighbors()[slot])) + " ";
                     }
                 } else {
                     n = "None.";
@@ -13,6 +13,7 @@ public class Delaunay {
     private Point[] points;
     DataStorer data;
     HashSet<Neighbors> edges;
+    private boolean bruteForce = false;   // Use the original O(n^4) triple test instead of Bowyer-Watson
 
     public Delaunay(DataStorer data) {
         this.data = data;
@@ -24,6 +25,10 @@ public class Delaunay {
             delaunayPairs.add(new Edge(rawPoints[0], rawPoints[1]));
             return delaunayPairs;
         }
+
+        if (!bruteForce) {
+            return triangulate(rawPoints).getPairs();
+        }
         
         edges = new HashSet<>();
         
@@ -43,6 +48,43 @@ public class Delaunay {
         
         return delaunayPairs;
     }
+
+    // Triangulation of the given cells, which can be kept and updated as the cells change.
+    public Triangulation triangulate(int[] rawPoints) {
+        int[] xs = new int[rawPoints.length];
+        int[] ys = new int[rawPoints.length];
+        for (int ptNum = 0; ptNum < rawPoints.length; ptNum++) {
+            double[] coords = data.cellLocationToRawXY(rawPoints[ptNum]);
+            xs[ptNum] = (int) coords[0];
+            ys[ptNum] = (int) coords[1];
+        }
+        return new Triangulation(rawPoints, xs, ys);
+    }
+
+    // Remove the cells no longer given from a triangulation and insert the new ones. The pairs
+    // that changed are left in the triangulation's added and removed pairs.
+    public void update(Triangulation triangulation, int[] rawPoints) {
+        HashSet<Integer> cells = new HashSet<>();
+        for (int cell : rawPoints) {
+            cells.add(cell);
+        }
+        triangulation.clearChanges();
+        for (int cell : triangulation.getVertexCells()) {
+            if (!cells.contains(cell)) {
+                triangulation.remove(cell);
+            }
+        }
+        for (int cell : rawPoints) {
+            if (!triangulation.contains(cell)) {
+                double[] coords = data.cellLocationToRawXY(cell);
+                triangulation.insert(cell, (int) coords[0], (int) coords[1]);
+            }
+        }
+    }
+
+    public void setBruteForce(boolean bruteForce) {
+        this.bruteForce = bruteForce;
+    }
     
     public void generateTriangles() {
         for (int i = 0; i < points.length; i++) {
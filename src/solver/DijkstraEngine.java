@@ -0,0 +1,280 @@
+package solver;
+
+import dataStore.CostRaster;
+import dataStore.DataStorer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Dijkstra over the 8-connected cost raster using primitive arrays only.
+ * Scratch buffers are sized once for the raster and reused across calls;
+ * the heap reproduces java.util.PriorityQueue ordering so ties resolve
+ * exactly as in Solver's original search.
+ *
+ * @author yaw
+ */
+public class DijkstraEngine {
+
+    private DataStorer data;
+    private int width;
+    private int numCells;
+
+    // Neighbor offsets in getNeighborNum order, the direction used to look up each weight,
+    // and the direction used for the weight of the edge coming back from that neighbor.
+    private int[] offsets;
+    private int[] weightDirections;
+    private int[] reverseWeightDirections;
+
+    // Scratch buffers. A cell's cost and previous entries are only valid while its state
+    // is reached (stamp) or settled (stamp + 1) for the current search.
+    private double[] costs;
+    private int[] previous;
+    private int[] settleOrder;
+    private int[] states;
+    private int[] destinationStamps;
+    private int stamp;
+    private int[] heap = new int[1024];
+    private int heapSize;
+    private int numSettled;
+
+    public DijkstraEngine(DataStorer data) {
+        this.data = data;
+        width = data.getWidth();
+        numCells = data.getWidth() * data.getHeight();
+
+        offsets = new int[]{-width - 1, -width, -width + 1, 1, width + 1, width, width - 1, -1};
+        weightDirections = new int[8];
+        reverseWeightDirections = new int[8];
+        for (int dir = 0; dir < 8; dir++) {
+            weightDirections[dir] = firstDirection(offsets[dir]);
+            reverseWeightDirections[dir] = firstDirection(-offsets[dir]);
+        }
+
+        costs = new double[numCells + 1];
+        previous = new int[numCells + 1];
+        settleOrder = new int[numCells + 1];
+        states = new int[numCells + 1];
+        destinationStamps = new int[numCells + 1];
+    }
+
+    // True if the engine's buffers still match the raster dimensions.
+    public boolean fits(DataStorer data) {
+        return this.data == data && width == data.getWidth() && numCells == data.getWidth() * data.getHeight();
+    }
+
+    // Same contract as Solver.dijkstra: paths and costs to each destination, discounting the used edges.
+    public Object[] run(int src, int[] destinations, double edgeCostModification) {
+        search(src, destinations, data.getModifiedRoutingCosts());
+
+        ArrayList<int[]> paths = new ArrayList<>();
+        ArrayList<Double> pathCosts = new ArrayList<>();
+        for (int dest : destinations) {
+            int[] path = getPath(src, dest);
+
+            // Modify edge costs and recalculate real cost
+            double cost = 0;
+            for (int i = 0; i < path.length - 1; i++) {
+                cost += data.getEdgeWeight(path[i], path[i + 1], "c");
+                data.updateModifiedEdgeRoutingCost(path[i], path[i + 1], edgeCostModification);
+                data.updateModifiedEdgeRoutingCost(path[i + 1], path[i], edgeCostModification);
+            }
+            pathCosts.add(cost);
+            paths.add(path);
+        }
+        return new Object[]{paths, pathCosts};
+    }
+
+    // Settle cells from src until every destination is settled.
+    public void search(int src, int[] destinations, CostRaster weights) {
+        stamp += 2;
+        if (stamp >= Integer.MAX_VALUE - 2) {
+            Arrays.fill(states, 0);
+            Arrays.fill(destinationStamps, 0);
+            stamp = 2;
+        }
+        numSettled = 0;
+
+        int remaining = 0;
+        for (int cell : destinations) {
+            if (destinationStamps[cell] != stamp) {
+                destinationStamps[cell] = stamp;
+                remaining++;
+            }
+        }
+
+        heapSize = 0;
+        setCost(src, 0, -1);
+        push(src);
+
+        while (heapSize > 0) {
+            int u = poll();
+            if (states[u] == stamp + 1) {
+                continue;
+            }
+            states[u] = stamp + 1;
+            settleOrder[u] = ++numSettled;
+            if (destinationStamps[u] == stamp) {
+                remaining--;
+            }
+            if (remaining == 0) {
+                heapSize = 0;
+                break;
+            }
+
+            double uCost = costs[u];
+            for (int dir = 0; dir < 8; dir++) {
+                int v = u + offsets[dir];
+                if (v < 1 || v > numCells) {
+                    continue;
+                }
+                int state = states[v];
+                if (state == stamp + 1) {
+                    continue;
+                }
+                double altDistance = uCost + weights.getCost(u, weightDirections[dir]);
+                if (altDistance < (state == stamp ? costs[v] : Double.MAX_VALUE)) {
+                    states[v] = stamp;
+                    costs[v] = altDistance;
+                    previous[v] = u;
+                    push(v);
+                }
+            }
+        }
+    }
+
+    // True if the last search would have made exactly the same decisions had the given weight
+    // slots already held their current values instead of originalWeights. Only the relaxations
+    // that read a changed slot are replayed, using the settle order to rebuild the tentative cost
+    // the neighbor had at that moment.
+    public boolean unaffected(CostRaster weights, HashMap<Long, Double> originalWeights, int[] changedCells, int[] changedSlots, int numChanged) {
+        for (int i = 0; i < numChanged; i++) {
+            int u = changedCells[i];
+            int slot = changedSlots[i];
+            int v = u + offsets[slot];
+            // Slots are only read when u relaxes a neighbor that is not yet settled.
+            if (!isSettled(u) || settleOrder[u] == numSettled || v < 1 || v > numCells) {
+                continue;
+            }
+            if (isSettled(v) && settleOrder[v] < settleOrder[u]) {
+                continue;
+            }
+
+            double tentative = Double.MAX_VALUE;
+            for (int dir = 0; dir < 8; dir++) {
+                int x = v + offsets[dir];
+                if (x < 1 || x > numCells || !isSettled(x) || settleOrder[x] >= settleOrder[u]) {
+                    continue;
+                }
+                int xSlot = reverseWeightDirections[dir];
+                double altDistance = costs[x] + originalWeights.getOrDefault(slotKey(x, xSlot), weights.getCost(x, xSlot));
+                tentative = Math.min(tentative, altDistance);
+            }
+
+            double oldDistance = costs[u] + originalWeights.get(slotKey(u, slot));
+            double newDistance = costs[u] + weights.getCost(u, slot);
+            if (oldDistance != newDistance && (oldDistance < tentative || newDistance < tentative)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static long slotKey(int cell, int slot) {
+        return (long) cell * 8 + slot;
+    }
+
+    // Cell sequence from src to dest using the last search.
+    public int[] getPath(int src, int dest) {
+        int length = 1;
+        for (int node = dest; node != src; node = getPrevious(node)) {
+            length++;
+        }
+        int[] path = new int[length];
+        int node = dest;
+        for (int i = length - 1; i >= 0; i--) {
+            path[i] = node;
+            if (i > 0) {
+                node = getPrevious(node);
+            }
+        }
+        return path;
+    }
+
+    public double getCost(int cell) {
+        return states[cell] >= stamp ? costs[cell] : Double.MAX_VALUE;
+    }
+
+    public int getPrevious(int cell) {
+        return states[cell] >= stamp ? previous[cell] : -1;
+    }
+
+    public boolean isSettled(int cell) {
+        return states[cell] == stamp + 1;
+    }
+
+    // Number of cells settled by the last search.
+    public int getNumSettled() {
+        return numSettled;
+    }
+
+    private int firstDirection(int offset) {
+        for (int dir = 0; dir < 8; dir++) {
+            if (offsets[dir] == offset) {
+                return dir;
+            }
+        }
+        return -1;
+    }
+
+    private void setCost(int cell, double cost, int prev) {
+        states[cell] = stamp;
+        costs[cell] = cost;
+        previous[cell] = prev;
+    }
+
+    // Heap operations follow PriorityQueue.offer/poll, comparing live costs like the old Data entries.
+    private void push(int cell) {
+        if (heapSize == heap.length) {
+            heap = Arrays.copyOf(heap, heapSize * 2);
+        }
+        int k = heapSize++;
+        double key = costs[cell];
+        while (k > 0) {
+            int parent = (k - 1) >>> 1;
+            int e = heap[parent];
+            if (Double.compare(key, costs[e]) >= 0) {
+                break;
+            }
+            heap[k] = e;
+            k = parent;
+        }
+        heap[k] = cell;
+    }
+
+    private int poll() {
+        int result = heap[0];
+        int n = --heapSize;
+        if (n > 0) {
+            int x = heap[n];
+            double key = costs[x];
+            int k = 0;
+            int half = n >>> 1;
+            while (k < half) {
+                int child = (k << 1) + 1;
+                int c = heap[child];
+                int right = child + 1;
+                if (right < n && Double.compare(costs[c], costs[heap[right]]) > 0) {
+                    c = heap[child = right];
+                }
+                if (Double.compare(key, costs[c]) <= 0) {
+                    break;
+                }
+                heap[k] = c;
+                k = child;
+            }
+            heap[k] = x;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,220 @@
+package solver;
+
+import dataStore.CandidateGraph;
+import dataStore.DataStorer;
+import dataStore.Sink;
+import dataStore.Source;
+import java.util.Arrays;
+
+/**
+ * Upper bounds on the flow of every candidate edge direction. Some optimal
+ * solution routes its flow along simple paths, so flow from u to v can only
+ * come from sources that reach u without passing v and go to sinks that v
+ * reaches without passing u. Both amounts come from one depth first search
+ * that finds which vertices removing a vertex cuts off (its articulation
+ * children), so all bounds take linear time. The same search gives the
+ * supply and storage of every connected component.
+ *
+ * @author yaw
+ */
+public class FlowBounds {
+
+    private CandidateGraph graph;
+    private Search search;
+    private double[] edgeBounds;
+
+    public FlowBounds(DataStorer data, double numYears) {
+        graph = data.getCandidateGraph();
+        int numVertices = graph.getNumVertices();
+        int[] edgeVertices = graph.getEdgeVertices();
+
+        // Supply and annual storage at each vertex.
+        double[] supply = new double[numVertices];
+        double[] storage = new double[numVertices];
+        for (Source source : data.getSources()) {
+            int vertex = graph.getVertex(source.getCellNum());
+            if (vertex >= 0) {
+                supply[vertex] += source.getProductionRate();
+            }
+        }
+        for (Sink sink : data.getSinks()) {
+            int vertex = graph.getVertex(sink.getCellNum());
+            if (vertex >= 0) {
+                storage[vertex] += sink.getCapacity() / numYears;
+            }
+        }
+
+        search = new Search(graph, supply, storage);
+
+        edgeBounds = new double[edgeVertices.length];
+        for (int e = 0; e < edgeVertices.length; e += 2) {
+            int v1 = edgeVertices[e];
+            int v2 = edgeVertices[e + 1];
+            edgeBounds[e] = Math.min(search.sideTotal(search.supplySums, v2, v1), search.sideTotal(search.storageSums, v1, v2));
+            edgeBounds[e + 1] = Math.min(search.sideTotal(search.supplySums, v1, v2), search.sideTotal(search.storageSums, v2, v1));
+        }
+    }
+
+    // Bounds indexed like the MPS edges: 2k for edge k of the edge index, v1 to v2, and 2k + 1 for the reverse.
+    public double[] getEdgeBounds() {
+        return edgeBounds;
+    }
+
+    // Total supply of the component holding cell, 0 if cell is not in the graph.
+    public double getComponentSupply(int cell) {
+        int vertex = graph.getVertex(cell);
+        return vertex < 0 ? 0 : search.supplySums[search.root[vertex]];
+    }
+
+    // Total annual storage of the component holding cell, 0 if cell is not in the graph.
+    public double getComponentStorage(int cell) {
+        int vertex = graph.getVertex(cell);
+        return vertex < 0 ? 0 : search.storageSums[search.root[vertex]];
+    }
+
+    // Depth first search numbering, low points and subtree sums of the candidate graph.
+    private static class Search {
+
+        int[] discovery;
+        int[] low;
+        int[] parent;
+        int[] subtreeSize;
+        int[] root;
+        double[] supply;
+        double[] storage;
+        double[] supplySums;     // Subtree sums
+        double[] storageSums;
+        int[] childStarts;       // Children of each vertex, in discovery order
+        int[] children;
+        double[] restSupply;
+        double[] restStorage;
+
+        Search(CandidateGraph graph, double[] supply, double[] storage) {
+            int numVertices = graph.getNumVertices();
+            int[] offsets = graph.getOffsets();
+            int[] neighbors = graph.getNeighbors();
+            this.supply = supply;
+            this.storage = storage;
+            discovery = new int[numVertices];
+            low = new int[numVertices];
+            parent = new int[numVertices];
+            subtreeSize = new int[numVertices];
+            root = new int[numVertices];
+            supplySums = new double[numVertices];
+            storageSums = new double[numVertices];
+            Arrays.fill(discovery, -1);
+
+            // Iterative search, so long chains do not overflow the stack.
+            int[] order = new int[numVertices];
+            int[] stack = new int[numVertices];
+            int[] nextSlot = new int[numVertices];
+            int time = 0;
+            for (int start = 0; start < numVertices; start++) {
+                if (discovery[start] >= 0) {
+                    continue;
+                }
+                int depth = 0;
+                stack[depth++] = start;
+                parent[start] = -1;
+                root[start] = start;
+                discovery[start] = low[start] = time;
+                order[time++] = start;
+                nextSlot[start] = offsets[start];
+                while (depth > 0) {
+                    int v = stack[depth - 1];
+                    if (nextSlot[v] < offsets[v + 1]) {
+                        int u = neighbors[nextSlot[v]++];
+                        if (discovery[u] < 0) {
+                            parent[u] = v;
+                            root[u] = start;
+                            discovery[u] = low[u] = time;
+                            order[time++] = u;
+                            nextSlot[u] = offsets[u];
+                            stack[depth++] = u;
+                        } else if (u != parent[v]) {
+                            low[v] = Math.min(low[v], discovery[u]);
+                        }
+                    } else {
+                        depth--;
+                        subtreeSize[v]++;
+                        supplySums[v] += supply[v];
+                        storageSums[v] += storage[v];
+                        int p = parent[v];
+                        if (p >= 0) {
+                            low[p] = Math.min(low[p], low[v]);
+                            subtreeSize[p] += subtreeSize[v];
+                            supplySums[p] += supplySums[v];
+                            storageSums[p] += storageSums[v];
+                        }
+                    }
+                }
+            }
+
+            // Children lists, filled in discovery order so each list is sorted.
+            childStarts = new int[numVertices + 1];
+            for (int v = 0; v < numVertices; v++) {
+                if (parent[v] >= 0) {
+                    childStarts[parent[v] + 1]++;
+                }
+            }
+            for (int v = 0; v < numVertices; v++) {
+                childStarts[v + 1] += childStarts[v];
+            }
+            children = new int[numVertices];
+            int[] fill = Arrays.copyOf(childStarts, numVertices);
+            for (int i = 0; i < numVertices; i++) {
+                int v = order[i];
+                if (parent[v] >= 0) {
+                    children[fill[parent[v]]++] = v;
+                }
+            }
+
+            // What stays connected to the rest of the component without v: everything but v and
+            // the subtrees v cuts off.
+            restSupply = new double[numVertices];
+            restStorage = new double[numVertices];
+            for (int v = 0; v < numVertices; v++) {
+                restSupply[v] = supplySums[root[v]] - supply[v];
+                restStorage[v] = storageSums[root[v]] - storage[v];
+                for (int i = childStarts[v]; i < childStarts[v + 1]; i++) {
+                    int c = children[i];
+                    if (low[c] >= discovery[v]) {
+                        restSupply[v] -= supplySums[c];
+                        restStorage[v] -= storageSums[c];
+                    }
+                }
+                restSupply[v] = Math.max(0, restSupply[v]);
+                restStorage[v] = Math.max(0, restStorage[v]);
+            }
+        }
+
+        // Sum of sums (supplySums or storageSums) over the vertices still connected to neighbor u
+        // once vertex v is removed.
+        double sideTotal(double[] sums, int v, int u) {
+            int child = childHolding(v, u);
+            if (child >= 0 && low[child] >= discovery[v]) {
+                return sums[child];
+            }
+
+            return sums == supplySums ? restSupply[v] : restStorage[v];
+        }
+
+        // Child of v whose subtree holds u, or -1 if u is not below v.
+        private int childHolding(int v, int u) {
+            if (discovery[u] <= discovery[v] || discovery[u] >= discovery[v] + subtreeSize[v]) {
+                return -1;
+            }
+            int lo = childStarts[v];
+            int hi = childStarts[v + 1] - 1;
+            while (lo < hi) {
+                int mid = (lo + hi + 1) >>> 1;
+                if (discovery[children[mid]] <= discovery[u]) {
+                    lo = mid;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return children[lo];
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package solver;
+
+import dataStore.CandidateGraph;
+import dataStore.DataStorer;
+import dataStore.Edge;
+import dataStore.EdgeIndex;
+import dataStore.LinearComponent;
+import dataStore.Sink;
+import dataStore.Solution;
+import dataStore.Source;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+
+/**
+ * Greedy construction heuristic for the cap and price models, building a
+ * Solution without a MIP solver. Each round searches the candidate graph
+ * from every source with capacity left at once, pricing each edge by the
+ * extra pipeline cost of carrying that source's amount on top of the flow
+ * already there (on the cheapest trend that can carry it), and commits the
+ * path to the sink with the lowest cost per ton, counting source, sink and
+ * well costs. The cap model stops at the capture target; the price model
+ * stops once capturing more would cost more than it earns. Amounts are
+ * tracked in the heuristic fields of Source and Sink.
+ *
+ * @author yaw
+ */
+public class GreedyHeuristic {
+
+    // Part of the name of the Results directories heuristic solutions are saved in.
+    public static final String RUN_NAME = "greedy";
+
+    private DataStorer data;
+    private double crf;
+    private double numYears;
+
+    private Source[] sources;
+    private Sink[] sinks;
+    private LinearComponent[] linearComponents;
+    private Edge[] edges;
+    private double[] edgeIntercepts;    // [edge * numTrends + trend], per year
+    private double[] edgeSlopes;
+    private double[] flows;             // Net flow of edges[k], positive from v1 to v2
+    private double pipeUtilization;
+
+    private CandidateGraph graph;
+
+    private boolean[] sourceOpened;
+    private boolean[] sinkOpened;
+    private String modelVersion;
+    private double modelParamValue;
+
+    public GreedyHeuristic(DataStorer data, double crf, double numYears) {
+        this.data = data;
+        this.crf = crf;
+        this.numYears = numYears;
+    }
+
+    // Cap model (modelVersion c): capture modelParamValue MT/y. Price model (p): capture while the
+    // cost per ton plus modelParamValue, as in the price objective, is negative.
+    public Solution solve(String modelVersion, double modelParamValue) {
+        this.modelVersion = modelVersion;
+        this.modelParamValue = modelParamValue;
+        initialize();
+        boolean cap = modelVersion.equals("c");
+        double captured = 0;
+        int[] offsets = graph.getOffsets();
+        int[] neighbors = graph.getNeighbors();
+        int[] directedEdges = graph.getDirectedEdges();
+        int[] edgeVertices = graph.getEdgeVertices();
+        int[] vertexParents = new int[graph.getNumVertices()];
+        int[] parentEdges = new int[graph.getNumVertices()];
+        int[] origins = new int[graph.getNumVertices()];
+        double[] costs = new double[graph.getNumVertices()];
+
+        while (!cap || captured < modelParamValue - 1e-9) {
+            double remainingTarget = cap ? modelParamValue - captured : Double.MAX_VALUE;
+
+            // Cheapest per ton path from any open-able source to every vertex.
+            Arrays.fill(costs, Double.MAX_VALUE);
+            Arrays.fill(origins, -1);
+            PriorityQueue<double[]> queue = new PriorityQueue<>((a, b) -> Double.compare(a[0], b[0]));
+            for (int i = 0; i < sources.length; i++) {
+                int vertex = graph.getVertex(sources[i].getCellNum());
+                double amount = Math.min(sources[i].getRemainingCapacity(), remainingTarget);
+                if (vertex < 0 || amount <= 1e-9) {
+                    continue;
+                }
+                double cost = ((sourceOpened[i] ? 0 : sources[i].getOpeningCost(crf)) + sources[i].getCaptureCost() * amount) / amount;
+                if (cost < costs[vertex]) {
+                    costs[vertex] = cost;
+                    origins[vertex] = i;
+                    vertexParents[vertex] = -1;
+                    queue.add(new double[]{cost, vertex});
+                }
+            }
+            while (!queue.isEmpty()) {
+                double[] entry = queue.poll();
+                int v = (int) entry[1];
+                if (entry[0] > costs[v]) {
+                    continue;
+                }
+                double amount = Math.min(sources[origins[v]].getRemainingCapacity(), remainingTarget);
+                for (int slot = offsets[v]; slot < offsets[v + 1]; slot++) {
+                    int k = directedEdges[slot] / 2;
+                    int u = neighbors[slot];
+                    double direction = directedEdges[slot] % 2 == 0 ? 1 : -1;
+                    double extra = pipeCost(k, Math.abs(flows[k] + direction * amount)) - pipeCost(k, Math.abs(flows[k]));
+                    if (Double.isInfinite(extra)) {
+                        continue;
+                    }
+                    double cost = costs[v] + Math.max(0, extra) / amount;
+                    if (cost < costs[u]) {
+                        costs[u] = cost;
+                        origins[u] = origins[v];
+                        vertexParents[u] = v;
+                        parentEdges[u] = k;
+                        queue.add(new double[]{cost, u});
+                    }
+                }
+            }
+
+            // Best sink, with its own costs at the amount it can take.
+            int bestSink = -1;
+            double bestCost = Double.MAX_VALUE;
+            double bestAmount = 0;
+            for (int j = 0; j < sinks.length; j++) {
+                int vertex = graph.getVertex(sinks[j].getCellNum());
+                if (vertex < 0 || origins[vertex] < 0 || sinks[j].getRemainingCapacity() <= 1e-9) {
+                    continue;
+                }
+                double amount = Math.min(Math.min(sources[origins[vertex]].getRemainingCapacity(), remainingTarget), sinks[j].getRemainingCapacity());
+                double cost = costs[vertex] + sinkCost(j, amount) / amount;
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    bestSink = j;
+                    bestAmount = amount;
+                }
+            }
+            if (bestSink < 0 || (!cap && bestCost + modelParamValue >= 0)) {
+                break;
+            }
+
+            // Commit the path.
+            int vertex = graph.getVertex(sinks[bestSink].getCellNum());
+            int source = origins[vertex];
+            sinks[bestSink].setNumWells(sinks[bestSink].getNumWells() + newWells(bestSink, bestAmount));
+            sinks[bestSink].setRemainingCapacity(sinks[bestSink].getRemainingCapacity() - bestAmount);
+            sinkOpened[bestSink] = true;
+            sources[source].setRemainingCapacity(sources[source].getRemainingCapacity() - bestAmount);
+            sourceOpened[source] = true;
+            while (vertexParents[vertex] >= 0) {
+                int k = parentEdges[vertex];
+                flows[k] += edgeVertices[2 * k + 1] == vertex ? bestAmount : -bestAmount;
+                vertex = vertexParents[vertex];
+            }
+            captured += bestAmount;
+        }
+
+        if (cap && captured < modelParamValue - 1e-9) {
+            System.out.println(String.format("Greedy heuristic: only %.4f of the %.4f MT/y target can be captured", captured, modelParamValue));
+        }
+        return makeSolution();
+    }
+
+    // Column values of the last solution, named as in MPSWriter's models, for MIPStartWriter.
+    public HashMap<String, Double> getColumnValues() {
+        HashMap<String, Double> values = new HashMap<>();
+        for (int i = 0; i < sources.length; i++) {
+            if (sourceOpened[i]) {
+                values.put("s[" + i + "]", 1.0);
+                values.put("a[" + i + "]", sources[i].getProductionRate() - sources[i].getRemainingCapacity());
+            }
+        }
+        for (int j = 0; j < sinks.length; j++) {
+            if (sinkOpened[j]) {
+                values.put("r[" + j + "]", 1.0);
+                values.put("b[" + j + "]", sinks[j].getCapacity() / numYears - sinks[j].getRemainingCapacity());
+                values.put("w[" + j + "]", (double) sinks[j].getNumWells());
+            }
+        }
+        for (int k = 0; k < edges.length; k++) {
+            if (Math.abs(flows[k]) > 1e-9) {
+                int e = flows[k] > 0 ? 2 * k : 2 * k + 1;
+                int trend = cheapestTrend(k, Math.abs(flows[k]));
+                values.put("y[" + e + "][" + trend + "]", 1.0);
+                values.put("p[" + e + "][" + trend + "]", Math.abs(flows[k]));
+            }
+        }
+        values.put(modelVersion.equals("c") ? "captureTarget" : "taxCreditValue", modelParamValue);
+        values.put("crf", crf);
+        values.put("projectLength", numYears);
+        return values;
+    }
+
+    private void initialize() {
+        sources = data.getSources();
+        sinks = data.getSinks();
+        linearComponents = data.getLinearComponents();
+        EdgeIndex edgeIndex = data.getEdgeIndex();
+        edges = edgeIndex.getEdges();
+        pipeUtilization = linearComponents[0].getRowSlope() != 0 ? .93 : 1.0;
+
+        // Trend costs per edge.
+        double[] edgeConstructionCosts = edgeIndex.getConstructionCosts();
+        double[] edgeRightOfWayCosts = edgeIndex.getRightOfWayCosts();
+        int numTrends = linearComponents.length;
+        edgeIntercepts = new double[edges.length * numTrends];
+        edgeSlopes = new double[edges.length * numTrends];
+        for (int k = 0; k < edges.length; k++) {
+            double constructionCost = edgeConstructionCosts[k];
+            double rightOfWayCost = edgeRightOfWayCosts[k];
+            for (int c = 0; c < numTrends; c++) {
+                edgeIntercepts[k * numTrends + c] = (linearComponents[c].getConIntercept() * constructionCost + linearComponents[c].getRowIntercept() * rightOfWayCost) * crf;
+                edgeSlopes[k * numTrends + c] = (linearComponents[c].getConSlope() * constructionCost + linearComponents[c].getRowSlope() * rightOfWayCost) * crf / pipeUtilization;
+            }
+        }
+        flows = new double[edges.length];
+
+        graph = data.getCandidateGraph();
+
+        // Heuristic state.
+        sourceOpened = new boolean[sources.length];
+        sinkOpened = new boolean[sinks.length];
+        for (Source source : sources) {
+            source.setRemainingCapacity(source.getProductionRate());
+        }
+        for (Sink sink : sinks) {
+            sink.setRemainingCapacity(sink.getCapacity() / numYears);
+            sink.setNumWells(0);
+        }
+    }
+
+    // Yearly cost of a pipeline carrying flow on edges[k], infinite above the largest trend capacity.
+    private double pipeCost(int k, double flow) {
+        if (flow <= 1e-9) {
+            return 0;
+        }
+        int trend = cheapestTrend(k, flow);
+        if (trend < 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        int numTrends = linearComponents.length;
+        return edgeIntercepts[k * numTrends + trend] + edgeSlopes[k * numTrends + trend] * flow;
+    }
+
+    // Cheapest trend able to carry flow on edges[k], or -1.
+    private int cheapestTrend(int k, double flow) {
+        int numTrends = linearComponents.length;
+        int best = -1;
+        double bestCost = Double.MAX_VALUE;
+        for (int c = 0; c < numTrends; c++) {
+            double cost = edgeIntercepts[k * numTrends + c] + edgeSlopes[k * numTrends + c] * flow;
+            if (linearComponents[c].getMaxCapacity() >= flow - 1e-9 && cost < bestCost) {
+                bestCost = cost;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    // Yearly cost of storing amount more in sink j: opening, new wells and injection.
+    private double sinkCost(int j, double amount) {
+        return (sinkOpened[j] ? 0 : sinks[j].getOpeningCost(crf)) + newWells(j, amount) * sinks[j].getWellOpeningCost(crf) + sinks[j].getInjectionCost() * amount;
+    }
+
+    // Wells sink j needs on top of the ones it has to inject amount more.
+    private int newWells(int j, double amount) {
+        double stored = sinks[j].getCapacity() / numYears - sinks[j].getRemainingCapacity();
+        double slack = sinks[j].getNumWells() * sinks[j].getWellCapacity() - stored;
+        return (int) Math.max(0, Math.ceil((amount - slack) / sinks[j].getWellCapacity() - 1e-9));
+    }
+
+    private Solution makeSolution() {
+        Solution soln = new Solution();
+        for (int i = 0; i < sources.length; i++) {
+            if (sourceOpened[i]) {
+                soln.addSourceCaptureAmount(sources[i], sources[i].getProductionRate() - sources[i].getRemainingCapacity());
+            }
+        }
+        for (int j = 0; j < sinks.length; j++) {
+            if (sinkOpened[j]) {
+                soln.addSinkStorageAmount(sinks[j], sinks[j].getCapacity() / numYears - sinks[j].getRemainingCapacity());
+                soln.addSinkNumWells(sinks[j], sinks[j].getNumWells());
+            }
+        }
+        for (int k = 0; k < edges.length; k++) {
+            if (Math.abs(flows[k]) > 1e-9) {
+                soln.addEdgeTransportAmount(edges[k], Math.abs(flows[k]));
+                soln.setEdgeTrend(edges[k], cheapestTrend(k, Math.abs(flows[k])));
+            }
+        }
+        soln.setCRF(crf);
+        soln.setProjectLength((int) numYears);
+        if (modelVersion.equals("p")) {
+            soln.setTaxCredit(modelParamValue);
+        }
+        soln.setSolutionCosts(data);
+        return soln;
+    }
+}
@@ -0,0 +1,248 @@
+package solver;
+
+import dataStore.DataStorer;
+import dataStore.Edge;
+import dataStore.EdgeIndex;
+import dataStore.LinearComponent;
+import dataStore.Sink;
+import dataStore.Solution;
+import dataStore.Source;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Writes a Solution as a CPLEX MIP start (.mst) for a cap or price model,
+ * using the column names MPSWriter gives the model: s, a, r, b, w, y and p.
+ * A Solution only keeps the total flow of each opened edge, so directions
+ * are recovered from the capture and storage amounts by peeling the opened
+ * network from its leaves; flows on cycles are left to the solver. Every
+ * other column of the model gets a value, and columns the model does not
+ * have (left out by presolve, say) are skipped. The start is marked for
+ * repair, so a start that no longer fits a changed model still helps.
+ *
+ * @author yaw
+ */
+public class MIPStartWriter {
+
+    public static final String MIP_START_FILE = "start.mst";
+
+    // CPLEX MIP start effort level that repairs infeasible starts.
+    private static final int EFFORT_REPAIR = 4;
+
+    // Write soln as a MIP start for the model in mpsFile. Returns the number of values written.
+    public static int writeMIPStart(DataStorer data, Solution soln, File mpsFile, File mstFile) {
+        return writeMIPStart(getColumnValues(data, soln), mpsFile, mstFile);
+    }
+
+    // Write column values, by column name, as a MIP start for the model in mpsFile.
+    public static int writeMIPStart(HashMap<String, Double> values, File mpsFile, File mstFile) {
+        return write(values, mpsFile, mstFile, true);
+    }
+
+    // Write column values as a CPLEX solution file for the model in mpsFile, so the run directory
+    // holding both loads like a solved run.
+    public static int writeSolution(HashMap<String, Double> values, File mpsFile, File solFile) {
+        return write(values, mpsFile, solFile, false);
+    }
+
+    private static int write(HashMap<String, Double> values, File mpsFile, File file, boolean mipStart) {
+        LinkedHashMap<String, Integer> columns = readColumnNames(mpsFile);
+        if (columns.isEmpty()) {
+            return 0;
+        }
+
+        int numValues = 0;
+        try (PrintWriter out = new PrintWriter(file)) {
+            out.println("<?xml version = \"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>");
+            if (mipStart) {
+                out.println("<CPLEXSolutions version=\"1.2\">");
+            }
+            out.println(" <CPLEXSolution version=\"1.2\">");
+            out.println("  <header");
+            out.println("    problemName=\"" + mpsFile.getName() + "\"");
+            if (mipStart) {
+                out.println("    solutionName=\"m1\"");
+                out.println("    MIPStartIndex=\"0\"");
+                out.println("    MIPStartEffortLevel=\"" + EFFORT_REPAIR + "\"/>");
+            } else {
+                out.println("    solutionName=\"heuristic\"");
+                out.println("    solutionStatusString=\"heuristic\"/>");
+            }
+            // The solution loader expects these tags at exactly this indentation.
+            out.println(" <variables>");
+            for (String name : columns.keySet()) {
+                Double value = values.get(name);
+                if (value == null || (mipStart && !isSolutionColumn(name))) {
+                    // Unused facilities and edges; model constants are left to the solver in a start.
+                    if (!isSolutionColumn(name)) {
+                        continue;
+                    }
+                    value = 0.0;
+                }
+                out.println("  <variable name=\"" + name + "\" index=\"" + columns.get(name) + "\" value=\"" + format(value) + "\"/>");
+                numValues++;
+            }
+            out.println(" </variables>");
+            out.println(" </CPLEXSolution>");
+            if (mipStart) {
+                out.println("</CPLEXSolutions>");
+            }
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+            return 0;
+        }
+        return numValues;
+    }
+
+    // Values of the columns soln sets to something other than 0.
+    private static HashMap<String, Double> getColumnValues(DataStorer data, Solution soln) {
+        HashMap<String, Double> values = new HashMap<>();
+        Source[] sources = data.getSources();
+        Sink[] sinks = data.getSinks();
+        HashMap<Integer, Double> balances = new HashMap<>();
+
+        HashMap<Source, Double> captureAmounts = soln.getSourceCaptureAmounts();
+        for (int i = 0; i < sources.length; i++) {
+            Double capture = captureAmounts.get(sources[i]);
+            if (capture != null && capture > 0) {
+                values.put("s[" + i + "]", 1.0);
+                values.put("a[" + i + "]", capture);
+                balances.merge(sources[i].getCellNum(), capture, Double::sum);
+            }
+        }
+        HashMap<Sink, Double> storageAmounts = soln.getSinkStorageAmounts();
+        HashMap<Sink, Integer> numWells = soln.getSinkNumWells();
+        for (int i = 0; i < sinks.length; i++) {
+            Double storage = storageAmounts.get(sinks[i]);
+            if (storage != null && storage > 0) {
+                int wells = numWells.containsKey(sinks[i]) ? numWells.get(sinks[i]) : (int) Math.ceil(storage / sinks[i].getWellCapacity() - 1e-9);
+                values.put("r[" + i + "]", 1.0);
+                values.put("b[" + i + "]", storage);
+                values.put("w[" + i + "]", (double) wells);
+                balances.merge(sinks[i].getCellNum(), -storage, Double::sum);
+            }
+        }
+
+        // Direct the opened edges: at a vertex with one undirected edge left, that edge carries the
+        // vertex's surplus away (or its deficit in).
+        HashMap<Integer, ArrayList<Edge>> incidentEdges = new HashMap<>();
+        HashMap<Integer, Integer> undirectedDegrees = new HashMap<>();
+        for (Edge edge : soln.getOpenedEdges()) {
+            for (int vertex : new int[]{edge.v1, edge.v2}) {
+                incidentEdges.computeIfAbsent(vertex, v -> new ArrayList<>()).add(edge);
+                undirectedDegrees.merge(vertex, 1, Integer::sum);
+            }
+        }
+        HashMap<Edge, Double> directedFlows = new HashMap<>();   // Positive from v1 to v2
+        ArrayDeque<Integer> leaves = new ArrayDeque<>();
+        for (int vertex : undirectedDegrees.keySet()) {
+            if (undirectedDegrees.get(vertex) == 1) {
+                leaves.add(vertex);
+            }
+        }
+        while (!leaves.isEmpty()) {
+            int vertex = leaves.poll();
+            if (undirectedDegrees.get(vertex) != 1) {
+                continue;
+            }
+            for (Edge edge : incidentEdges.get(vertex)) {
+                if (!directedFlows.containsKey(edge)) {
+                    int other = edge.v1 == vertex ? edge.v2 : edge.v1;
+                    double surplus = balances.getOrDefault(vertex, 0.0);
+                    directedFlows.put(edge, edge.v1 == vertex ? surplus : -surplus);
+                    balances.merge(other, surplus, Double::sum);
+                    balances.put(vertex, 0.0);
+                    undirectedDegrees.put(vertex, 0);
+                    undirectedDegrees.merge(other, -1, Integer::sum);
+                    if (undirectedDegrees.get(other) == 1) {
+                        leaves.add(other);
+                    }
+                    break;
+                }
+            }
+        }
+
+        // Pipelines, on the trend the solution used or else the cheapest that carries the flow.
+        LinearComponent[] linearComponents = data.getLinearComponents();
+        EdgeIndex edgeIndex = data.getEdgeIndex();
+        double[] edgeConstructionCosts = edgeIndex.getConstructionCosts();
+        double[] edgeRightOfWayCosts = edgeIndex.getRightOfWayCosts();
+        double pipeUtilization = linearComponents[0].getRowSlope() != 0 ? .93 : 1.0;
+        HashMap<Edge, Integer> edgeTrends = soln.getEdgeTrends();
+        for (Edge edge : directedFlows.keySet()) {
+            double flow = directedFlows.get(edge);
+            int e = flow > 0 ? edgeIndex.getDirectedId(edge.v1, edge.v2) : edgeIndex.getDirectedId(edge.v2, edge.v1);
+            if (e < 0 || Math.abs(flow) <= 1e-9) {
+                continue;
+            }
+            int k = e / 2;
+            flow = Math.abs(flow);
+
+            Integer trend = edgeTrends.get(edge);
+            if (trend == null || trend >= linearComponents.length || linearComponents[trend].getMaxCapacity() < flow) {
+                trend = null;
+                double bestCost = Double.MAX_VALUE;
+                for (int c = 0; c < linearComponents.length; c++) {
+                    double cost = linearComponents[c].getConIntercept() * edgeConstructionCosts[k] + linearComponents[c].getRowIntercept() * edgeRightOfWayCosts[k]
+                            + (linearComponents[c].getConSlope() * edgeConstructionCosts[k] + linearComponents[c].getRowSlope() * edgeRightOfWayCosts[k]) * flow / pipeUtilization;
+                    if (linearComponents[c].getMaxCapacity() >= flow && cost < bestCost) {
+                        bestCost = cost;
+                        trend = c;
+                    }
+                }
+                if (trend == null) {
+                    continue;
+                }
+            }
+            values.put("y[" + e + "][" + trend + "]", 1.0);
+            values.put("p[" + e + "][" + trend + "]", flow);
+        }
+        return values;
+    }
+
+    // Whole values without a decimal point, as CPLEX writes them; the solution loader reads
+    // projectLength as an integer.
+    private static String format(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    private static boolean isSolutionColumn(String name) {
+        return name.length() > 2 && name.charAt(1) == '[' && "sarbwyp".indexOf(name.charAt(0)) >= 0;
+    }
+
+    // Column names of an MPS file (gzipped if its name ends in .gz) with their indices, in order.
+    public static LinkedHashMap<String, Integer> readColumnNames(File mpsFile) {
+        LinkedHashMap<String, Integer> columns = new LinkedHashMap<>();
+        try (InputStream in = mpsFile.getName().endsWith(".gz") ? new GZIPInputStream(new FileInputStream(mpsFile)) : new FileInputStream(mpsFile);
+                BufferedReader br = new BufferedReader(new InputStreamReader(in))) {
+            String line = br.readLine();
+            while (line != null && !line.startsWith("COLUMNS")) {
+                line = br.readLine();
+            }
+            line = br.readLine();
+            while (line != null && (line.isEmpty() || Character.isWhitespace(line.charAt(0)))) {
+                String[] column = line.trim().split("\\s+");
+                if (column.length >= 3 && !column[1].equals("'MARKER'") && !columns.containsKey(column[0])) {
+                    columns.put(column[0], columns.size());
+                }
+                line = br.readLine();
+            }
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+        }
+        return columns;
+    }
+}
@@ -0,0 +1,169 @@
+package solver;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes free format MPS records straight to a file channel through one
+ * reusable buffer, optionally gzip compressed. Names are copied as ASCII
+ * and numbers are formatted into the buffer directly.
+ *
+ * @author yaw
+ */
+public class MPSFileWriter implements Closeable {
+
+    // Comment line opening every model file, followed by the model's content hash.
+    public static final String HASH_PREFIX = "* SimCCS content hash ";
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private WritableByteChannel channel;
+    private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private byte[] digits = new byte[20];
+    private long bytesWritten;
+    private long startTime;
+    private long elapsedNanos;
+
+    public MPSFileWriter(String path, boolean compress) throws IOException {
+        startTime = System.nanoTime();
+        if (compress) {
+            channel = Channels.newChannel(new GZIPOutputStream(Files.newOutputStream(Paths.get(path)), BUFFER_SIZE));
+        } else {
+            channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        }
+    }
+
+    // Section header, like ROWS or COLUMNS.
+    public void section(String name) throws IOException {
+        put(name);
+        put('\n');
+    }
+
+    public void marker(String name, String type) throws IOException {
+        put('\t');
+        put(name);
+        put("\t'MARKER'\t'");
+        put(type);
+        put("'\n");
+    }
+
+    public void put(String text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            put(text.charAt(i));
+        }
+    }
+
+    public void put(char c) throws IOException {
+        if (!buffer.hasRemaining()) {
+            flush();
+        }
+        buffer.put((byte) c);
+    }
+
+    public void put(int value) throws IOException {
+        put((long) value);
+    }
+
+    public void put(long value) throws IOException {
+        if (value < 0) {
+            put('-');
+            value = -value;
+        }
+        int length = 0;
+        do {
+            digits[length++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        while (length > 0) {
+            put((char) digits[--length]);
+        }
+    }
+
+    // Values with at most 5 decimals, like the rounded coefficients, are written in fixed point;
+    // anything else as Double.toString. Either way the text parses back to the same double.
+    public void put(double value) throws IOException {
+        long units = Math.round(value * 100000.0);
+        if (Math.abs(value) >= 1e13 || units / 100000.0 != value) {
+            put(Double.toString(value));
+            return;
+        }
+        if (units < 0) {
+            put('-');
+            units = -units;
+        }
+        put(units / 100000);
+        long fraction = units % 100000;
+        if (fraction != 0) {
+            put('.');
+            for (long place = 10000; fraction > 0; place /= 10) {
+                put((char) ('0' + fraction / place));
+                fraction %= place;
+            }
+        }
+    }
+
+    // Content hash in the first line of an MPS file (gzipped if its name ends in .gz), or null if
+    // the file cannot be read or has no hash.
+    public static String readContentHash(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        try (InputStream in = file.getName().endsWith(".gz") ? new GZIPInputStream(new FileInputStream(file)) : new FileInputStream(file);
+                BufferedReader br = new BufferedReader(new InputStreamReader(in, StandardCharsets.US_ASCII))) {
+            String line = br.readLine();
+            if (line != null && line.startsWith(HASH_PREFIX)) {
+                return line.substring(HASH_PREFIX.length()).trim();
+            }
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+        }
+        return null;
+    }
+
+    // Bytes of MPS text written so far, before any compression.
+    public long getBytesWritten() {
+        return bytesWritten + buffer.position();
+    }
+
+    // Time from opening to closing the file.
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!channel.isOpen()) {
+            return;
+        }
+        try {
+            flush();
+        } finally {
+            channel.close();
+            elapsedNanos = System.nanoTime() - startTime;
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        bytesWritten += buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
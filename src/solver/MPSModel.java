@@ -0,0 +1,395 @@
+package solver;
+
+import java.io.IOException;
+import java.util.Arrays;
+import utilities.ContentHash;
+
+/**
+ * A mixed integer model held in primitive arrays. Columns and rows are
+ * numbered in the order they are added and named only when written, as a
+ * family name followed by up to two indices for columns ("y[3][1]") or a
+ * number for rows ("A12"). Terms are collected as coordinates and
+ * compressed into column major order, summing duplicates, before the model
+ * is read or written, so the same model is always written the same way.
+ *
+ * @author yaw
+ */
+public class MPSModel {
+
+    // Columns
+    private int numColumns;
+    private String[] columnFamilies = new String[16];
+    private int[] columnIndices1 = new int[16];
+    private int[] columnIndices2 = new int[16];
+    private boolean[] integerColumns = new boolean[16];
+    private String[] boundTypes = new String[16];
+    private double[] boundValues = new double[16];
+
+    // Rows
+    private int numRows;
+    private String[] rowFamilies = new String[16];
+    private int[] rowNumbers = new int[16];
+    private String[] rowSigns = new String[16];
+    private double[] rowRHS = new double[16];
+
+    // Terms, as coordinates until compressed, then sorted by column and row.
+    private int numTerms;
+    private int[] termColumns = new int[16];
+    private int[] termRows = new int[16];
+    private double[] termValues = new double[16];
+    private int[] columnStarts;
+    private boolean compressed = true;
+
+    // Column named family, family[index1] or family[index1][index2]; negative indices are left out.
+    public int addColumn(String family, int index1, int index2, boolean integer) {
+        if (numColumns == columnFamilies.length) {
+            int capacity = numColumns * 2;
+            columnFamilies = Arrays.copyOf(columnFamilies, capacity);
+            columnIndices1 = Arrays.copyOf(columnIndices1, capacity);
+            columnIndices2 = Arrays.copyOf(columnIndices2, capacity);
+            integerColumns = Arrays.copyOf(integerColumns, capacity);
+            boundTypes = Arrays.copyOf(boundTypes, capacity);
+            boundValues = Arrays.copyOf(boundValues, capacity);
+        }
+        columnFamilies[numColumns] = family;
+        columnIndices1[numColumns] = index1;
+        columnIndices2[numColumns] = index2;
+        integerColumns[numColumns] = integer;
+        compressed = false;
+        return numColumns++;
+    }
+
+    // Bound type as written in the BOUNDS section, like UP or LI.
+    public void setBound(int column, String type, double value) {
+        boundTypes[column] = type;
+        boundValues[column] = value;
+    }
+
+    // Row named family followed by number, or family alone if number is negative. Sign is N, L, G or E.
+    public int addRow(String family, int number, String sign) {
+        if (numRows == rowFamilies.length) {
+            int capacity = numRows * 2;
+            rowFamilies = Arrays.copyOf(rowFamilies, capacity);
+            rowNumbers = Arrays.copyOf(rowNumbers, capacity);
+            rowSigns = Arrays.copyOf(rowSigns, capacity);
+            rowRHS = Arrays.copyOf(rowRHS, capacity);
+        }
+        rowFamilies[numRows] = family;
+        rowNumbers[numRows] = number;
+        rowSigns[numRows] = sign;
+        return numRows++;
+    }
+
+    public void setRHS(int row, double rhs) {
+        rowRHS[row] = rhs;
+    }
+
+    public double getRHS(int row) {
+        return rowRHS[row];
+    }
+
+    // Coefficients are rounded to 5 decimals.
+    public void addTerm(int row, int column, double coefficient) {
+        if (numTerms == termColumns.length) {
+            int capacity = numTerms * 2;
+            termColumns = Arrays.copyOf(termColumns, capacity);
+            termRows = Arrays.copyOf(termRows, capacity);
+            termValues = Arrays.copyOf(termValues, capacity);
+        }
+        termColumns[numTerms] = column;
+        termRows[numTerms] = row;
+        termValues[numTerms] = Math.round(coefficient * 100000.0) / 100000.0;
+        numTerms++;
+        compressed = false;
+    }
+
+    // Sort the terms by column, then row, with two stable counting sorts and sum duplicate entries.
+    public void compress() {
+        if (compressed) {
+            return;
+        }
+        int[] rowOrder = countingSort(termRows, numRows, null);
+        int[] order = countingSort(termColumns, numColumns, rowOrder);
+
+        int[] sortedColumns = new int[numTerms];
+        int[] sortedRows = new int[numTerms];
+        double[] sortedValues = new double[numTerms];
+        int size = 0;
+        for (int i = 0; i < numTerms; i++) {
+            int term = order[i];
+            if (size > 0 && sortedColumns[size - 1] == termColumns[term] && sortedRows[size - 1] == termRows[term]) {
+                sortedValues[size - 1] += termValues[term];
+            } else {
+                sortedColumns[size] = termColumns[term];
+                sortedRows[size] = termRows[term];
+                sortedValues[size] = termValues[term];
+                size++;
+            }
+        }
+        termColumns = sortedColumns;
+        termRows = sortedRows;
+        termValues = sortedValues;
+        numTerms = size;
+
+        columnStarts = new int[numColumns + 1];
+        for (int i = 0; i < numTerms; i++) {
+            columnStarts[termColumns[i] + 1]++;
+        }
+        for (int column = 0; column < numColumns; column++) {
+            columnStarts[column + 1] += columnStarts[column];
+        }
+        compressed = true;
+    }
+
+    public int getNumColumns() {
+        return numColumns;
+    }
+
+    public int getNumRows() {
+        return numRows;
+    }
+
+    // Number of nonzeros after compressing.
+    public int getNumNonzeros() {
+        compress();
+        return numTerms;
+    }
+
+    public boolean isInteger(int column) {
+        return integerColumns[column];
+    }
+
+    public String getColumnName(int column) {
+        StringBuilder name = new StringBuilder(columnFamilies[column]);
+        if (columnIndices1[column] >= 0) {
+            name.append('[').append(columnIndices1[column]).append(']');
+        }
+        if (columnIndices2[column] >= 0) {
+            name.append('[').append(columnIndices2[column]).append(']');
+        }
+        return name.toString();
+    }
+
+    public String getRowName(int row) {
+        return rowNumbers[row] < 0 ? rowFamilies[row] : rowFamilies[row] + rowNumbers[row];
+    }
+
+    // Position of the term of row in column among the compressed terms, or -1 if there is none.
+    public int findTerm(int row, int column) {
+        compress();
+        int position = Arrays.binarySearch(termRows, columnStarts[column], columnStarts[column + 1], row);
+        return position < 0 ? -1 : position;
+    }
+
+    // Hash of everything written for the model. Models built in the same order from the same
+    // data hash the same.
+    public String getContentHash() {
+        return getContentHash(null);
+    }
+
+    // Hash of the model with the changes of variant, which may be null.
+    public String getContentHash(Variant variant) {
+        compress();
+        ContentHash hash = new ContentHash();
+        hash.add(numRows).add(numColumns).add(numTerms);
+        for (int row = 0; row < numRows; row++) {
+            hash.add(rowFamilies[row]).add(rowNumbers[row]).add(rowSigns[row]).add(rhs(row, variant));
+        }
+        for (int column = 0; column < numColumns; column++) {
+            hash.add(columnFamilies[column]).add(columnIndices1[column]).add(columnIndices2[column]).add(integerColumns[column]);
+            hash.add(boundTypes[column]).add(boundValues[column]);
+        }
+        for (int i = 0; i < numTerms; i++) {
+            hash.add(termColumns[i]).add(termRows[i]).add(termValue(i, variant));
+        }
+        return hash.toHex();
+    }
+
+    // Write the model in free MPS format, integer columns first between markers, preceded by a
+    // comment line holding the content hash.
+    public void write(MPSFileWriter writer) throws IOException {
+        write(writer, null, getContentHash());
+    }
+
+    // Write the model with the changes of variant, which may be null. Several variants of a
+    // compressed model can be written at the same time.
+    public void write(MPSFileWriter writer, Variant variant, String contentHash) throws IOException {
+        compress();
+        writer.put(MPSFileWriter.HASH_PREFIX);
+        writer.put(contentHash);
+        writer.put('\n');
+        writer.section("NAME\tSimCCS");
+
+        // Identify constraints.
+        writer.section("ROWS");
+        for (int row = 0; row < numRows; row++) {
+            writer.put('\t');
+            writer.put(rowSigns[row]);
+            writer.put('\t');
+            putRowName(writer, row);
+            writer.put('\n');
+        }
+
+        // Identify columns.
+        writer.section("COLUMNS");
+        writer.marker("MARK0000", "INTORG");
+        for (int column = 0; column < numColumns; column++) {
+            if (integerColumns[column]) {
+                putColumn(writer, column, variant);
+            }
+        }
+        writer.marker("MARK0001", "INTEND");
+        for (int column = 0; column < numColumns; column++) {
+            if (!integerColumns[column]) {
+                putColumn(writer, column, variant);
+            }
+        }
+
+        // Identify RHSs.
+        writer.section("RHS");
+        for (int row = 0; row < numRows; row++) {
+            double value = rhs(row, variant);
+            if (value != 0) {
+                writer.put("\trhs\t");
+                putRowName(writer, row);
+                writer.put('\t');
+                writer.put(value);
+                writer.put('\n');
+            }
+        }
+
+        // Identify bounds.
+        writer.section("BOUNDS");
+        for (int column = 0; column < numColumns; column++) {
+            if (boundTypes[column] != null) {
+                writer.put('\t');
+                writer.put(boundTypes[column]);
+                writer.put(" bnd\t");
+                putColumnName(writer, column);
+                writer.put('\t');
+                writer.put(boundValues[column]);
+                writer.put('\n');
+            }
+        }
+
+        // End file.
+        writer.put("ENDATA");
+    }
+
+    private void putColumn(MPSFileWriter writer, int column, Variant variant) throws IOException {
+        for (int i = columnStarts[column]; i < columnStarts[column + 1]; i++) {
+            writer.put('\t');
+            putColumnName(writer, column);
+            writer.put('\t');
+            putRowName(writer, termRows[i]);
+            writer.put('\t');
+            writer.put(termValue(i, variant));
+            writer.put('\n');
+        }
+    }
+
+    private double termValue(int position, Variant variant) {
+        if (variant != null && variant.numTerms > 0) {
+            int change = Arrays.binarySearch(variant.termPositions, 0, variant.numTerms, position);
+            if (change >= 0) {
+                return variant.termValues[change];
+            }
+        }
+        return termValues[position];
+    }
+
+    private double rhs(int row, Variant variant) {
+        if (variant != null && variant.numRows > 0) {
+            int change = Arrays.binarySearch(variant.rows, 0, variant.numRows, row);
+            if (change >= 0) {
+                return variant.rowRHS[change];
+            }
+        }
+        return rowRHS[row];
+    }
+
+    private void putColumnName(MPSFileWriter writer, int column) throws IOException {
+        writer.put(columnFamilies[column]);
+        if (columnIndices1[column] >= 0) {
+            writer.put('[');
+            writer.put(columnIndices1[column]);
+            writer.put(']');
+        }
+        if (columnIndices2[column] >= 0) {
+            writer.put('[');
+            writer.put(columnIndices2[column]);
+            writer.put(']');
+        }
+    }
+
+    private void putRowName(MPSFileWriter writer, int row) throws IOException {
+        writer.put(rowFamilies[row]);
+        if (rowNumbers[row] >= 0) {
+            writer.put(rowNumbers[row]);
+        }
+    }
+
+    // Term positions ordered by key, keeping the order of previous (or of the terms) among equal keys.
+    private int[] countingSort(int[] keys, int numKeys, int[] previous) {
+        int[] starts = new int[numKeys + 1];
+        for (int i = 0; i < numTerms; i++) {
+            starts[keys[i] + 1]++;
+        }
+        for (int key = 0; key < numKeys; key++) {
+            starts[key + 1] += starts[key];
+        }
+        int[] order = new int[numTerms];
+        for (int i = 0; i < numTerms; i++) {
+            int term = previous == null ? i : previous[i];
+            order[starts[keys[term]]++] = term;
+        }
+        return order;
+    }
+
+    /**
+     * Coefficients and right hand sides that replace those of a model when
+     * it is written, kept sorted by term position and row.
+     */
+    public static class Variant {
+
+        private int numTerms;
+        private int[] termPositions = new int[16];
+        private double[] termValues = new double[16];
+        private int numRows;
+        private int[] rows = new int[16];
+        private double[] rowRHS = new double[16];
+
+        // Replace the coefficient at a position from findTerm, rounded like addTerm.
+        public void setTerm(int position, double coefficient) {
+            int change = Arrays.binarySearch(termPositions, 0, numTerms, position);
+            if (change < 0) {
+                change = -change - 1;
+                if (numTerms == termPositions.length) {
+                    termPositions = Arrays.copyOf(termPositions, numTerms * 2);
+                    termValues = Arrays.copyOf(termValues, numTerms * 2);
+                }
+                System.arraycopy(termPositions, change, termPositions, change + 1, numTerms - change);
+                System.arraycopy(termValues, change, termValues, change + 1, numTerms - change);
+                termPositions[change] = position;
+                numTerms++;
+            }
+            termValues[change] = Math.round(coefficient * 100000.0) / 100000.0;
+        }
+
+        public void setRHS(int row, double rhs) {
+            int change = Arrays.binarySearch(rows, 0, numRows, row);
+            if (change < 0) {
+                change = -change - 1;
+                if (numRows == rows.length) {
+                    rows = Arrays.copyOf(rows, numRows * 2);
+                    rowRHS = Arrays.copyOf(rowRHS, numRows * 2);
+                }
+                System.arraycopy(rows, change, rows, change + 1, numRows - change);
+                System.arraycopy(rowRHS, change, rowRHS, change + 1, numRows - change);
+                rows[change] = row;
+                numRows++;
+            }
+            rowRHS[change] = rhs;
+        }
+    }
+}
@@ -1,17 +1,19 @@
 package solver;
 
+import dataStore.CandidateGraph;
 import dataStore.DataStorer;
-import dataStore.Edge;
+import dataStore.EdgeIndex;
 import dataStore.LinearComponent;
 import dataStore.Sink;
 import dataStore.Source;
-import dataStore.UnidirEdge;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  *
@@ -19,34 +21,101 @@ import java.util.HashSet;
  */
 public class MPSWriter {
 
+    private static boolean compressOutput = false;
+    private static long lastBytesWritten;
+    private static long lastElapsedNanos;
+    private static String lastContentHash;
+    private static boolean presolve = true;
+
     public static void writeCapPriceMPS(DataStorer data, double crf, double numYears, double modelParamValue, String basePath, String dataset, String scenario, String modelVersion) {
         //model version: c - cap, p - price
+        CapPriceModel capPrice = buildCapPriceModel(data, crf, numYears, modelParamValue, modelVersion);
+        makeFile(getFileName(modelVersion), basePath, dataset, scenario, capPrice.model);
+    }
+
+    // Write one model per value (a tax credit for the price model, a capture target for the cap
+    // model) into its own directory under Results. The model is built once for the first value;
+    // every variant only changes the capture objective terms and the right hand sides that hold
+    // the value, and the variants are written in parallel.
+    public static void writeCapPriceSweep(DataStorer data, double crf, double numYears, double[] modelParamValues, String basePath, String dataset, String scenario, String modelVersion, int numThreads) {
+        long startTime = System.nanoTime();
+        CapPriceModel capPrice = buildCapPriceModel(data, crf, numYears, modelParamValues[0], modelVersion);
+        MPSModel model = capPrice.model;
+        model.compress();
+        Source[] sources = data.getSources();
+
+        // Term positions changed by the value.
+        int[] captureTerms = new int[sources.length];
+        for (int i = 0; i < sources.length; i++) {
+            captureTerms[i] = capPrice.a[i] >= 0 ? model.findTerm(capPrice.objective, capPrice.a[i]) : -1;
+        }
+
+        String fileName = getFileName(modelVersion);
+        String resultsDirectory = basePath + "/" + dataset + "/Scenarios/" + scenario + "/Results/";
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, numThreads));
+        ArrayList<Future<?>> jobs = new ArrayList<>();
+        for (double value : modelParamValues) {
+            jobs.add(pool.submit(() -> {
+                MPSModel.Variant variant = new MPSModel.Variant();
+                variant.setRHS(capPrice.parameter, value);
+                if (modelVersion.equals("c")) {
+                    variant.setRHS(capPrice.captureTarget, value);
+                } else if (modelVersion.equals("p")) {
+                    for (int i = 0; i < sources.length; i++) {
+                        if (captureTerms[i] >= 0) {
+                            variant.setTerm(captureTerms[i], sources[i].getCaptureCost() + value);
+                        }
+                    }
+                }
+
+                File directory = new File(resultsDirectory + fileName.substring(0, fileName.indexOf('.')) + "_" + formatValue(value));
+                directory.mkdirs();
+                String mipPath = directory + "/" + fileName + (compressOutput ? ".gz" : "");
+                String contentHash = model.getContentHash(variant);
+                if (contentHash.equals(MPSFileWriter.readContentHash(new File(mipPath)))) {
+                    System.out.println("MPS file unchanged, keeping " + mipPath);
+                    return;
+                }
+                try (MPSFileWriter writer = new MPSFileWriter(mipPath, compressOutput)) {
+                    model.write(writer, variant, contentHash);
+                } catch (IOException e) {
+                    System.out.println(e.getMessage());
+                }
+            }));
+        }
+        try {
+            for (Future<?> job : jobs) {
+                job.get();
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            System.out.println(e.getMessage());
+        } finally {
+            pool.shutdown();
+        }
+        System.out.println(String.format("Wrote %d %s models (%d rows, %d columns, %d nonzeros each) in %.2f s", modelParamValues.length, fileName,
+                model.getNumRows(), model.getNumColumns(), model.getNumNonzeros(), (System.nanoTime() - startTime) / 1e9));
+    }
+
+    private static CapPriceModel buildCapPriceModel(DataStorer data, double crf, double numYears, double modelParamValue, String modelVersion) {
+        CapPriceModel capPrice = new CapPriceModel();
 
         // Collect data
         Source[] sources = data.getSources();
         Sink[] sinks = data.getSinks();
         LinearComponent[] linearComponents = data.getLinearComponents();
-        int[] graphVertices = data.getGraphVertices();
-        HashMap<Integer, HashSet<Integer>> neighbors = data.getGraphNeighbors();
-
-        HashMap<Edge, Double> edgeConstructionCosts = data.getGraphEdgeConstructionCosts();
-        HashMap<Edge, Double> edgeRightOfWayCosts = data.getGraphEdgeRightOfWayCosts();
-        HashMap<Source, Integer> sourceCellToIndex = new HashMap<>();
-        HashMap<Integer, Source> sourceIndexToCell = new HashMap<>();
-        HashMap<Sink, Integer> sinkCellToIndex = new HashMap<>();
-        HashMap<Integer, Sink> sinkIndexToCell = new HashMap<>();
-        HashMap<Integer, Integer> vertexCellToIndex = new HashMap<>();
-        HashMap<Integer, Integer> vertexIndexToCell = new HashMap<>();
-        HashMap<UnidirEdge, Integer> edgeToIndex = new HashMap<>();
-        HashMap<Integer, UnidirEdge> edgeIndexToEdge = new HashMap<>();
-        HashSet<Integer> sourceCells = new HashSet<>();
-        HashSet<Integer> sinkCells = new HashSet<>();
-
-        HashMap<String, HashSet<ConstraintTerm>> intVariableToConstraints = new HashMap<>();
-        HashMap<String, HashSet<ConstraintTerm>> contVariableToConstraints = new HashMap<>();
-        HashMap<String, String> constraintToSign = new HashMap<>();
-        HashMap<String, Double> constraintRHS = new HashMap<>();
-        HashMap<String, VariableBound> variableBounds = new HashMap<>();
+        CandidateGraph graph = data.getCandidateGraph();
+        int[] offsets = graph.getOffsets();
+        int[] directedEdges = graph.getDirectedEdges();
+
+        EdgeIndex edgeIndex = data.getEdgeIndex();
+        double[] edgeConstructionCosts = edgeIndex.getConstructionCosts();
+        double[] edgeRightOfWayCosts = edgeIndex.getRightOfWayCosts();
+        int numDirectedEdges = 2 * edgeIndex.size();
+        HashMap<Integer, ArrayList<Integer>> cellToSources = new HashMap<>();
+        HashMap<Integer, ArrayList<Integer>> cellToSinks = new HashMap<>();
+
+        MPSModel model = new MPSModel();
+        capPrice.model = model;
 
         // Set pipe capacity factor if right of way costs are provided.
         double pipeUtilization = 1.0;
@@ -56,373 +125,323 @@ public class MPSWriter {
 
         // Initialize cell/index maps
         for (int i = 0; i < sources.length; i++) {
-            sourceCellToIndex.put(sources[i], i);
-            sourceIndexToCell.put(i, sources[i]);
-            sourceCells.add(sources[i].getCellNum());
+            if (!cellToSources.containsKey(sources[i].getCellNum())) {
+                cellToSources.put(sources[i].getCellNum(), new ArrayList<Integer>());
+            }
+            cellToSources.get(sources[i].getCellNum()).add(i);
         }
         for (int i = 0; i < sinks.length; i++) {
-            sinkCellToIndex.put(sinks[i], i);
-            sinkIndexToCell.put(i, sinks[i]);
-            sinkCells.add(sinks[i].getCellNum());
-        }
-        for (int i = 0; i < graphVertices.length; i++) {
-            vertexCellToIndex.put(graphVertices[i], i);
-            vertexIndexToCell.put(i, graphVertices[i]);
-        }
-        int index = 0;
-        for (Edge e : edgeConstructionCosts.keySet()) {
-            UnidirEdge e1 = new UnidirEdge(e.v1, e.v2);
-            edgeToIndex.put(e1, index);
-            edgeIndexToEdge.put(index, e1);
-            index++;
-
-            UnidirEdge e2 = new UnidirEdge(e.v2, e.v1);
-            edgeToIndex.put(e2, index);
-            edgeIndexToEdge.put(index, e2);
-            index++;
+            if (!cellToSinks.containsKey(sinks[i].getCellNum())) {
+                cellToSinks.put(sinks[i].getCellNum(), new ArrayList<Integer>());
+            }
+            cellToSinks.get(sinks[i].getCellNum()).add(i);
         }
+        // Presolve: flow bounds and the edge trends, sources and sinks the model can leave out.
+        ModelPresolve reduction = new ModelPresolve(data, edgeIndex, numYears, pipeUtilization, modelVersion, presolve);
+        double[] flowBounds = reduction.getFlowBounds();
 
         // Build model
-        // Make variables
+        // Make variables, -1 for the ones left out
         // Source openings
-        String[] s = new String[sources.length];
+        int[] s = new int[sources.length];
         for (int i = 0; i < sources.length; i++) {
-            s[i] = "s[" + i + "]";
-            variableBounds.put(s[i], new VariableBound("UP", 1));
+            s[i] = -1;
+            if (reduction.isSourceUsed(i)) {
+                s[i] = model.addColumn("s", i, -1, true);
+                model.setBound(s[i], "UP", 1);
+            }
         }
 
         // Capture amounts
-        String[] a = new String[sources.length];
+        int[] a = new int[sources.length];
+        capPrice.a = a;
         for (int i = 0; i < sources.length; i++) {
-            a[i] = "a[" + i + "]";
+            a[i] = reduction.isSourceUsed(i) ? model.addColumn("a", i, -1, false) : -1;
         }
 
         // Reservoir openings
-        String[] r = new String[sinks.length];
+        int[] r = new int[sinks.length];
         for (int i = 0; i < sinks.length; i++) {
-            r[i] = "r[" + i + "]";
-            variableBounds.put(r[i], new VariableBound("UP", 1));
+            r[i] = -1;
+            if (reduction.isSinkUsed(i)) {
+                r[i] = model.addColumn("r", i, -1, true);
+                model.setBound(r[i], "UP", 1);
+            }
         }
 
         // Injection amounts
-        String[] b = new String[sinks.length];
+        int[] b = new int[sinks.length];
         for (int i = 0; i < sinks.length; i++) {
-            b[i] = "b[" + i + "]";
+            b[i] = reduction.isSinkUsed(i) ? model.addColumn("b", i, -1, false) : -1;
         }
 
         // Well openings
-        String[] w = new String[sinks.length];
+        int[] w = new int[sinks.length];
         for (int i = 0; i < sinks.length; i++) {
-            w[i] = "w[" + i + "]";
-            variableBounds.put(w[i], new VariableBound("LI", 0));
+            w[i] = -1;
+            if (reduction.isSinkUsed(i)) {
+                w[i] = model.addColumn("w", i, -1, true);
+                model.setBound(w[i], "LI", 0);
+            }
         }
 
         // Pipeline between i and j with trend c
-        String[][] y = new String[edgeToIndex.size()][linearComponents.length];
-        for (int e = 0; e < edgeToIndex.size(); e++) {
+        int[][] y = new int[numDirectedEdges][linearComponents.length];
+        for (int e = 0; e < numDirectedEdges; e++) {
             for (int c = 0; c < linearComponents.length; c++) {
-                y[e][c] = "y[" + e + "][" + c + "]";
-                variableBounds.put(y[e][c], new VariableBound("UP", 1));
+                y[e][c] = -1;
+                if (reduction.isTrendUsed(e, c)) {
+                    y[e][c] = model.addColumn("y", e, c, true);
+                    model.setBound(y[e][c], "UP", 1);
+                }
             }
         }
 
         // Pipeline capcaity
-        String[][] p = new String[edgeToIndex.size()][linearComponents.length];
-        for (int e = 0; e < edgeToIndex.size(); e++) {
+        int[][] p = new int[numDirectedEdges][linearComponents.length];
+        for (int e = 0; e < numDirectedEdges; e++) {
             for (int c = 0; c < linearComponents.length; c++) {
-                p[e][c] = "p[" + e + "][" + c + "]";
+                p[e][c] = reduction.isTrendUsed(e, c) ? model.addColumn("p", e, c, false) : -1;
             }
-            //}
         }
 
         // Make constraints
-        // Pipeline capacity constraints
+        // Pipeline capacity constraints, with the flow bound as big-M where it is tighter
         int constraintCounter = 1;
-        for (int e = 0; e < edgeToIndex.size(); e++) {
+        for (int e = 0; e < numDirectedEdges; e++) {
             for (int c = 0; c < linearComponents.length; c++) {
-                String constraint = "A" + constraintCounter++;
-                if (!contVariableToConstraints.containsKey(p[e][c])) {
-                    contVariableToConstraints.put(p[e][c], new HashSet<ConstraintTerm>());
+                if (!reduction.isTrendUsed(e, c)) {
+                    continue;
                 }
-                contVariableToConstraints.get(p[e][c]).add(new ConstraintTerm(constraint, 1));
+                int constraint = model.addRow("A", constraintCounter++, "L");
+                model.addTerm(constraint, p[e][c], 1);
+                model.addTerm(constraint, y[e][c], -Math.min(linearComponents[c].getMaxCapacity(), flowBounds[e]));
 
-                if (!intVariableToConstraints.containsKey(y[e][c])) {
-                    intVariableToConstraints.put(y[e][c], new HashSet<ConstraintTerm>());
-                }
-                intVariableToConstraints.get(y[e][c]).add(new ConstraintTerm(constraint, -linearComponents[c].getMaxCapacity()));
-
-                constraintToSign.put(constraint, "L");
-                constraintRHS.put(constraint, 0.0);
-
-                constraint = "A" + constraintCounter++;
-                contVariableToConstraints.get(p[e][c]).add(new ConstraintTerm(constraint, 1));
-                constraintToSign.put(constraint, "G");
+                constraint = model.addRow("A", constraintCounter++, "G");
+                model.addTerm(constraint, p[e][c], 1);
             }
         }
 
         // No pipeline loops
         constraintCounter = 1;
-        for (int e = 0; e < edgeToIndex.size(); e++) {
-            //for (int src : graphVertices) {
-            //for (int dest : neighbors.get(src)) {
-            String constraint = "B" + constraintCounter++;
+        for (int e = 0; e < numDirectedEdges; e++) {
+            if (!reduction.isEdgeUsed(e)) {
+                continue;
+            }
+            int constraint = model.addRow("B", constraintCounter++, "L");
             for (int c = 0; c < linearComponents.length; c++) {
-                if (!intVariableToConstraints.containsKey(y[e][c])) {
-                    intVariableToConstraints.put(y[e][c], new HashSet<ConstraintTerm>());
+                if (reduction.isTrendUsed(e, c)) {
+                    model.addTerm(constraint, y[e][c], 1);
                 }
-                intVariableToConstraints.get(y[e][c]).add(new ConstraintTerm(constraint, 1));
-
             }
-            constraintToSign.put(constraint, "L");
-            constraintRHS.put(constraint, 1.0);
-            //}
+            model.setRHS(constraint, 1.0);
         }
 
         // Conservation of flow
         constraintCounter = 1;
-        for (int src : graphVertices) {
-            String constraint = "C" + constraintCounter++;
-            for (int dest : neighbors.get(src)) {
-                UnidirEdge edge = new UnidirEdge(src, dest);
-                for (int c = 0; c < linearComponents.length; c++) {
-                    if (!contVariableToConstraints.containsKey(p[edgeToIndex.get(edge)][c])) {
-                        contVariableToConstraints.put(p[edgeToIndex.get(edge)][c], new HashSet<ConstraintTerm>());
-                    }
-                    contVariableToConstraints.get(p[edgeToIndex.get(edge)][c]).add(new ConstraintTerm(constraint, 1));
-                }
+        for (int v = 0; v < graph.getNumVertices(); v++) {
+            int src = graph.getCell(v);
+            if (!hasFlowTerms(v, graph, reduction, a, b, cellToSources, cellToSinks)) {
+                continue;
             }
-
-            for (int dest : neighbors.get(src)) {
-                UnidirEdge edge = new UnidirEdge(dest, src);
+            int constraint = model.addRow("C", constraintCounter++, "E");
+            for (int slot = offsets[v]; slot < offsets[v + 1]; slot++) {
+                int outIndex = directedEdges[slot];
+                int inIndex = outIndex ^ 1;
                 for (int c = 0; c < linearComponents.length; c++) {
-                    if (!contVariableToConstraints.containsKey(p[edgeToIndex.get(edge)][c])) {
-                        contVariableToConstraints.put(p[edgeToIndex.get(edge)][c], new HashSet<ConstraintTerm>());
+                    if (reduction.isTrendUsed(outIndex, c)) {
+                        model.addTerm(constraint, p[outIndex][c], 1);
+                    }
+                    if (reduction.isTrendUsed(inIndex, c)) {
+                        model.addTerm(constraint, p[inIndex][c], -1);
                     }
-                    contVariableToConstraints.get(p[edgeToIndex.get(edge)][c]).add(new ConstraintTerm(constraint, -1));
                 }
             }
 
             // Set right hand side
-            if (sourceCells.contains(src)) {
-                for (Source source : sources) {
-                    if (source.getCellNum() == src) {
-                        if (!contVariableToConstraints.containsKey(a[sourceCellToIndex.get(source)])) {
-                            contVariableToConstraints.put(a[sourceCellToIndex.get(source)], new HashSet<ConstraintTerm>());
-                        }
-                        contVariableToConstraints.get(a[sourceCellToIndex.get(source)]).add(new ConstraintTerm(constraint, -1));
+            if (cellToSources.containsKey(src)) {
+                for (int i : cellToSources.get(src)) {
+                    if (a[i] >= 0) {
+                        model.addTerm(constraint, a[i], -1);
                     }
                 }
             }
-            if (sinkCells.contains(src)) {
-                for (Sink sink : sinks) {
-                    if (sink.getCellNum() == src) {
-                        if (!contVariableToConstraints.containsKey(b[sinkCellToIndex.get(sink)])) {
-                            contVariableToConstraints.put(b[sinkCellToIndex.get(sink)], new HashSet<ConstraintTerm>());
-                        }
-                        contVariableToConstraints.get(b[sinkCellToIndex.get(sink)]).add(new ConstraintTerm(constraint, 1));
+            if (cellToSinks.containsKey(src)) {
+                for (int i : cellToSinks.get(src)) {
+                    if (b[i] >= 0) {
+                        model.addTerm(constraint, b[i], 1);
                     }
                 }
             }
-
-            constraintToSign.put(constraint, "E");
         }
 
         // Capture capped by max production
         constraintCounter = 1;
-        for (Source src : sources) {
-            String constraint = "D" + constraintCounter++;
-
-            if (!intVariableToConstraints.containsKey(s[sourceCellToIndex.get(src)])) {
-                intVariableToConstraints.put(s[sourceCellToIndex.get(src)], new HashSet<ConstraintTerm>());
-            }
-            intVariableToConstraints.get(s[sourceCellToIndex.get(src)]).add(new ConstraintTerm(constraint, src.getProductionRate()));
-
-            if (!contVariableToConstraints.containsKey(a[sourceCellToIndex.get(src)])) {
-                contVariableToConstraints.put(a[sourceCellToIndex.get(src)], new HashSet<ConstraintTerm>());
+        for (int i = 0; i < sources.length; i++) {
+            if (s[i] < 0) {
+                continue;
             }
-            contVariableToConstraints.get(a[sourceCellToIndex.get(src)]).add(new ConstraintTerm(constraint, -1));
-            constraintToSign.put(constraint, "G");
-            //constraintRHS.put(constraint, 0.0);
+            int constraint = model.addRow("D", constraintCounter++, "G");
+            model.addTerm(constraint, s[i], sources[i].getProductionRate());
+            model.addTerm(constraint, a[i], -1);
         }
 
         // Well injection capped by max injectivity
         constraintCounter = 1;
-        for (Sink snk : sinks) {
-            String constraint = "E" + constraintCounter++;
-
-            if (!intVariableToConstraints.containsKey(w[sinkCellToIndex.get(snk)])) {
-                intVariableToConstraints.put(w[sinkCellToIndex.get(snk)], new HashSet<ConstraintTerm>());
-            }
-            intVariableToConstraints.get(w[sinkCellToIndex.get(snk)]).add(new ConstraintTerm(constraint, snk.getWellCapacity()));
-
-            if (!contVariableToConstraints.containsKey(b[sinkCellToIndex.get(snk)])) {
-                contVariableToConstraints.put(b[sinkCellToIndex.get(snk)], new HashSet<ConstraintTerm>());
+        for (int i = 0; i < sinks.length; i++) {
+            if (r[i] < 0) {
+                continue;
             }
-            contVariableToConstraints.get(b[sinkCellToIndex.get(snk)]).add(new ConstraintTerm(constraint, -1));
-            constraintToSign.put(constraint, "G");
-            //constraintRHS.put(constraint, 0.0);
+            int constraint = model.addRow("E", constraintCounter++, "G");
+            model.addTerm(constraint, w[i], sinks[i].getWellCapacity());
+            model.addTerm(constraint, b[i], -1);
         }
 
         // Storage capped by max capacity
         constraintCounter = 1;
-        for (Sink snk : sinks) {
-            String constraint = "F" + constraintCounter++;
-            if (!intVariableToConstraints.containsKey(r[sinkCellToIndex.get(snk)])) {
-                intVariableToConstraints.put(r[sinkCellToIndex.get(snk)], new HashSet<ConstraintTerm>());
-            }
-            intVariableToConstraints.get(r[sinkCellToIndex.get(snk)]).add(new ConstraintTerm(constraint, snk.getCapacity() / numYears));
-
-            if (!contVariableToConstraints.containsKey(b[sinkCellToIndex.get(snk)])) {
-                contVariableToConstraints.put(b[sinkCellToIndex.get(snk)], new HashSet<ConstraintTerm>());
+        for (int i = 0; i < sinks.length; i++) {
+            if (r[i] < 0) {
+                continue;
             }
-            contVariableToConstraints.get(b[sinkCellToIndex.get(snk)]).add(new ConstraintTerm(constraint, -1));
-            constraintToSign.put(constraint, "G");
-            //constraintRHS.put(constraint, 0.0);
+            int constraint = model.addRow("F", constraintCounter++, "G");
+            model.addTerm(constraint, r[i], sinks[i].getCapacity() / numYears);
+            model.addTerm(constraint, b[i], -1);
         }
 
-        String constraint;
+        int constraint;
 
         // Set amount of CO2 to capture
         if (modelVersion.equals("c")) {
-            constraintCounter = 1;
-            constraint = "G" + constraintCounter++;
-            for (Source src : sources) {
-                if (!contVariableToConstraints.containsKey(a[sourceCellToIndex.get(src)])) {
-                    contVariableToConstraints.put(a[sourceCellToIndex.get(src)], new HashSet<ConstraintTerm>());
+            constraint = model.addRow("G", 1, "E");
+            capPrice.captureTarget = constraint;
+            for (int i = 0; i < sources.length; i++) {
+                if (a[i] >= 0) {
+                    model.addTerm(constraint, a[i], 1);
                 }
-                contVariableToConstraints.get(a[sourceCellToIndex.get(src)]).add(new ConstraintTerm(constraint, 1));
             }
-            constraintToSign.put(constraint, "E");
-            constraintRHS.put(constraint, modelParamValue);
+            model.setRHS(constraint, modelParamValue);
         }
 
         // Hardcode constants.
+        constraint = model.addRow("H", 1, "E");
+        capPrice.parameter = constraint;
         if (modelVersion.equals("c")) {
-            contVariableToConstraints.put("captureTarget", new HashSet<ConstraintTerm>());
-            contVariableToConstraints.get("captureTarget").add(new ConstraintTerm("H1", 1));
+            model.addTerm(constraint, model.addColumn("captureTarget", -1, -1, false), 1);
         } else if (modelVersion.equals("p")) {
-            contVariableToConstraints.put("taxCreditValue", new HashSet<ConstraintTerm>());
-            contVariableToConstraints.get("taxCreditValue").add(new ConstraintTerm("H1", 1));
+            model.addTerm(constraint, model.addColumn("taxCreditValue", -1, -1, false), 1);
         }
-        constraintToSign.put("H1", "E");
-        constraintRHS.put("H1", modelParamValue);
+        model.setRHS(constraint, modelParamValue);
 
-        contVariableToConstraints.put("crf", new HashSet<ConstraintTerm>());
-        contVariableToConstraints.get("crf").add(new ConstraintTerm("H2", 1));
-        constraintToSign.put("H2", "E");
-        constraintRHS.put("H2", crf);
-        contVariableToConstraints.put("projectLength", new HashSet<ConstraintTerm>());
-        contVariableToConstraints.get("projectLength").add(new ConstraintTerm("H3", 1));
-        constraintToSign.put("H3", "E");
-        constraintRHS.put("H3", numYears);
+        constraint = model.addRow("H", 2, "E");
+        model.addTerm(constraint, model.addColumn("crf", -1, -1, false), 1);
+        model.setRHS(constraint, crf);
+        constraint = model.addRow("H", 3, "E");
+        model.addTerm(constraint, model.addColumn("projectLength", -1, -1, false), 1);
+        model.setRHS(constraint, numYears);
 
         // Make objective
-        constraint = "OBJ";
-        for (Source src : sources) {
-            if (!intVariableToConstraints.containsKey(s[sourceCellToIndex.get(src)])) {
-                intVariableToConstraints.put(s[sourceCellToIndex.get(src)], new HashSet<ConstraintTerm>());
-            }
-            intVariableToConstraints.get(s[sourceCellToIndex.get(src)]).add(new ConstraintTerm(constraint, src.getOpeningCost(crf)));
-
-            if (!contVariableToConstraints.containsKey(a[sourceCellToIndex.get(src)])) {
-                contVariableToConstraints.put(a[sourceCellToIndex.get(src)], new HashSet<ConstraintTerm>());
+        constraint = model.addRow("OBJ", -1, "N");
+        capPrice.objective = constraint;
+        for (int i = 0; i < sources.length; i++) {
+            if (s[i] < 0) {
+                continue;
             }
+            model.addTerm(constraint, s[i], sources[i].getOpeningCost(crf));
             if (modelVersion.equals("p")) {
-                contVariableToConstraints.get(a[sourceCellToIndex.get(src)]).add(new ConstraintTerm(constraint, (src.getCaptureCost() + modelParamValue)));
+                model.addTerm(constraint, a[i], sources[i].getCaptureCost() + modelParamValue);
             } else {
-                contVariableToConstraints.get(a[sourceCellToIndex.get(src)]).add(new ConstraintTerm(constraint, src.getCaptureCost()));
+                model.addTerm(constraint, a[i], sources[i].getCaptureCost());
             }
         }
 
-        for (int e = 0; e < edgeToIndex.size(); e++) {
+        for (int e = 0; e < numDirectedEdges; e++) {
+            double constructionCost = edgeConstructionCosts[e / 2];
+            double rightOfWayCost = edgeRightOfWayCosts[e / 2];
             for (int c = 0; c < linearComponents.length; c++) {
-                UnidirEdge unidirEdge = edgeIndexToEdge.get(e);
-                Edge bidirEdge = new Edge(unidirEdge.v1, unidirEdge.v2);
-
-                if (!intVariableToConstraints.containsKey(y[e][c])) {
-                    intVariableToConstraints.put(y[e][c], new HashSet<ConstraintTerm>());
+                if (!reduction.isTrendUsed(e, c)) {
+                    continue;
                 }
-                double coefficient = (linearComponents[c].getConIntercept() * edgeConstructionCosts.get(bidirEdge) + linearComponents[c].getRowIntercept() * edgeRightOfWayCosts.get(bidirEdge)) * crf;
-                intVariableToConstraints.get(y[e][c]).add(new ConstraintTerm(constraint, coefficient));
+                double coefficient = (linearComponents[c].getConIntercept() * constructionCost + linearComponents[c].getRowIntercept() * rightOfWayCost) * crf;
+                model.addTerm(constraint, y[e][c], coefficient);
 
-                if (!contVariableToConstraints.containsKey(p[e][c])) {
-                    contVariableToConstraints.put(p[e][c], new HashSet<ConstraintTerm>());
-                }
-                coefficient = (linearComponents[c].getConSlope() * edgeConstructionCosts.get(bidirEdge) + linearComponents[c].getRowSlope() * edgeRightOfWayCosts.get(bidirEdge)) * crf / pipeUtilization;
-                contVariableToConstraints.get(p[e][c]).add(new ConstraintTerm(constraint, coefficient));
+                coefficient = (linearComponents[c].getConSlope() * constructionCost + linearComponents[c].getRowSlope() * rightOfWayCost) * crf / pipeUtilization;
+                model.addTerm(constraint, p[e][c], coefficient);
             }
         }
 
-        for (Sink snk : sinks) {
-            if (!intVariableToConstraints.containsKey(r[sinkCellToIndex.get(snk)])) {
-                intVariableToConstraints.put(r[sinkCellToIndex.get(snk)], new HashSet<ConstraintTerm>());
+        for (int i = 0; i < sinks.length; i++) {
+            if (r[i] < 0) {
+                continue;
             }
-            intVariableToConstraints.get(r[sinkCellToIndex.get(snk)]).add(new ConstraintTerm(constraint, snk.getOpeningCost(crf)));
+            model.addTerm(constraint, r[i], sinks[i].getOpeningCost(crf));
+            model.addTerm(constraint, w[i], sinks[i].getWellOpeningCost(crf));
+            model.addTerm(constraint, b[i], sinks[i].getInjectionCost());
+        }
 
-            if (!intVariableToConstraints.containsKey(w[sinkCellToIndex.get(snk)])) {
-                intVariableToConstraints.put(w[sinkCellToIndex.get(snk)], new HashSet<ConstraintTerm>());
-            }
-            intVariableToConstraints.get(w[sinkCellToIndex.get(snk)]).add(new ConstraintTerm(constraint, snk.getWellOpeningCost(crf)));
+        System.out.println(reduction.getReport(model));
+        return capPrice;
+    }
 
-            if (!contVariableToConstraints.containsKey(b[sinkCellToIndex.get(snk)])) {
-                contVariableToConstraints.put(b[sinkCellToIndex.get(snk)], new HashSet<ConstraintTerm>());
+    // Whether the conservation row of vertex v would have any terms left.
+    private static boolean hasFlowTerms(int v, CandidateGraph graph, ModelPresolve reduction,
+            int[] a, int[] b, HashMap<Integer, ArrayList<Integer>> cellToSources, HashMap<Integer, ArrayList<Integer>> cellToSinks) {
+        int[] directedEdges = graph.getDirectedEdges();
+        for (int slot = graph.getOffsets()[v]; slot < graph.getOffsets()[v + 1]; slot++) {
+            if (reduction.isEdgeUsed(directedEdges[slot]) || reduction.isEdgeUsed(directedEdges[slot] ^ 1)) {
+                return true;
             }
-            contVariableToConstraints.get(b[sinkCellToIndex.get(snk)]).add(new ConstraintTerm(constraint, snk.getInjectionCost()));
         }
+        int vertex = graph.getCell(v);
+        if (cellToSources.containsKey(vertex)) {
+            for (int i : cellToSources.get(vertex)) {
+                if (a[i] >= 0) {
+                    return true;
+                }
+            }
+        }
+        if (cellToSinks.containsKey(vertex)) {
+            for (int i : cellToSinks.get(vertex)) {
+                if (b[i] >= 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
 
-        constraintToSign.put(constraint, "N");
-
+    private static String getFileName(String modelVersion) {
         String fileName = "";
         if (modelVersion.equals("c")) {
             fileName = "cap.mps";
         } else if (modelVersion.equals("p")) {
             fileName = "price.mps";
         }
-
-        makeFile(fileName, basePath, dataset, scenario, intVariableToConstraints, contVariableToConstraints, constraintToSign, constraintRHS, variableBounds);
+        return fileName;
     }
 
-    private static void makeFile(String fileName, String basePath, String dataset, String scenario, HashMap<String, HashSet<ConstraintTerm>> intVariableToConstraints, HashMap<String, HashSet<ConstraintTerm>> contVariableToConstraints, HashMap<String, String> constraintToSign, HashMap<String, Double> constraintRHS, HashMap<String, VariableBound> variableBounds) {
-        StringBuilder problemFormulation = new StringBuilder("NAME\tSimCCS\n");
-
-        // Identify constraints.
-        problemFormulation.append("ROWS\n");
-        for (String constraint : constraintToSign.keySet()) {
-            problemFormulation.append("\t" + constraintToSign.get(constraint) + "\t" + constraint + "\n");
-        }
-
-        // Identify columns.
-        problemFormulation.append("COLUMNS\n");
-        problemFormulation.append("\tMARK0000\t'MARKER'\t'INTORG'\n");
-        for (String intVar : intVariableToConstraints.keySet()) {
-            for (ConstraintTerm term : intVariableToConstraints.get(intVar)) {
-                problemFormulation.append("\t" + intVar + "\t" + term.constraint + "\t" + term.coefficient + "\n");
-            }
-        }
-        problemFormulation.append("\tMARK0001\t'MARKER'\t'INTEND'\n");
-        for (String contVar : contVariableToConstraints.keySet()) {
-            for (ConstraintTerm term : contVariableToConstraints.get(contVar)) {
-                problemFormulation.append("\t" + contVar + "\t" + term.constraint + "\t" + term.coefficient + "\n");
-            }
+    // Value as written in a directory name, without a fraction if it is whole.
+    private static String formatValue(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
         }
+        return Double.toString(value);
+    }
 
-        // Identify RHSs.
-        problemFormulation.append("RHS\n");
-        for (String constraint : constraintRHS.keySet()) {
-            problemFormulation.append("\trhs\t" + constraint + "\t" + constraintRHS.get(constraint) + "\n");
-        }
+    private static void makeFile(String fileName, String basePath, String dataset, String scenario, MPSModel model) {
+        String mipDirectory = basePath + "/" + dataset + "/Scenarios/" + scenario + "/MIP/";
+        String mipPath = mipDirectory + fileName + (compressOutput ? ".gz" : "");
 
-        // Identify bounds.
-        problemFormulation.append("BOUNDS\n");
-        for (String variable : variableBounds.keySet()) {
-            problemFormulation.append("\t" + variableBounds.get(variable).type + " bnd\t" + variable + "\t" + variableBounds.get(variable).bound + "\n");
+        // Keep the existing file if it holds the same model.
+        String contentHash = model.getContentHash();
+        lastContentHash = contentHash;
+        if (contentHash.equals(MPSFileWriter.readContentHash(new File(mipPath)))) {
+            lastBytesWritten = 0;
+            lastElapsedNanos = 0;
+            System.out.println("MPS file unchanged, keeping " + mipPath);
+            return;
         }
 
-        // End file.
-        problemFormulation.append("ENDATA");
-
         // Clear mip directory.
-        String mipDirectory = basePath + "/" + dataset + "/Scenarios/" + scenario + "/MIP/";
         File mipFolder = new File(mipDirectory);
         File[] mips = mipFolder.listFiles();
         if (mips != null) {
@@ -431,34 +450,54 @@ public class MPSWriter {
             }
         }
 
-        // Save to file.
-        String mipPath = mipDirectory + fileName;
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(mipPath))) {
-            bw.write(problemFormulation.toString());
+        // Stream to file.
+        MPSFileWriter writer;
+        try (MPSFileWriter out = new MPSFileWriter(mipPath, compressOutput)) {
+            writer = out;
+            model.write(writer, null, contentHash);
         } catch (IOException e) {
             System.out.println(e.getMessage());
+            return;
         }
+        lastBytesWritten = writer.getBytesWritten();
+        lastElapsedNanos = writer.getElapsedNanos();
+        System.out.println(String.format("Wrote %s: %d rows, %d columns, %d nonzeros, %.1f MB in %.2f s", mipPath, model.getNumRows(),
+                model.getNumColumns(), model.getNumNonzeros(), lastBytesWritten / 1e6, lastElapsedNanos / 1e9));
     }
 
-    private static class ConstraintTerm {
+    // Gzip the MPS file, adding .gz to its name.
+    public static void setCompressOutput(boolean compress) {
+        compressOutput = compress;
+    }
 
-        String constraint;
-        double coefficient;
+    // Bound edge flows by the reachable supply and storage, instead of the total capture, and leave
+    // out the trends, sources and sinks that cannot be part of an optimal solution.
+    public static void setPresolve(boolean presolve) {
+        MPSWriter.presolve = presolve;
+    }
 
-        public ConstraintTerm(String constraint, double coefficient) {
-            this.constraint = constraint;
-            this.coefficient = Math.round(coefficient * 100000.0) / 100000.0;
-        }
+    // Uncompressed size of the last MPS file written.
+    public static long getLastBytesWritten() {
+        return lastBytesWritten;
     }
 
-    private static class VariableBound {
+    // Time taken to write the last MPS file.
+    public static long getLastElapsedNanos() {
+        return lastElapsedNanos;
+    }
 
-        String type;
-        double bound;
+    // Content hash of the last model generated, whether or not its file had to be rewritten.
+    public static String getLastContentHash() {
+        return lastContentHash;
+    }
 
-        public VariableBound(String type, double bound) {
-            this.type = type;
-            this.bound = bound;
-        }
+    // A cap or price model with the columns and rows that depend on the model parameter.
+    private static class CapPriceModel {
+
+        MPSModel model;
+        int[] a;                    // Capture amount columns
+        int objective;
+        int captureTarget = -1;     // Row setting the total capture in the cap model
+        int parameter;              // Row holding the tax credit or capture target
     }
 }
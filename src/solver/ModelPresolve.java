@@ -0,0 +1,173 @@
+package solver;
+
+import dataStore.CandidateGraph;
+import dataStore.DataStorer;
+import dataStore.Edge;
+import dataStore.EdgeIndex;
+import dataStore.LinearComponent;
+import dataStore.Sink;
+import dataStore.Source;
+import java.util.Arrays;
+
+/**
+ * Decides, from the candidate graph alone, which parts of the cap and price
+ * models cannot matter to an optimal solution so MPSWriter can leave them
+ * out: edge directions no flow can use (dangling junction edges end up
+ * here), trends that another trend of the edge beats over its whole usable
+ * flow range, and sources and sinks with nothing to connect to. Also counts
+ * the rows, columns and nonzeros the model has without presolve.
+ *
+ * @author yaw
+ */
+public class ModelPresolve {
+
+    private double[] flowBounds;
+    private boolean[][] trendUsed;
+    private boolean[] sourceUsed;
+    private boolean[] sinkUsed;
+
+    // Size of the model without presolve.
+    private long originalRows;
+    private long originalColumns;
+    private long originalNonzeros;
+
+    // Directed edge 2k runs from edge k of edgeIndex, v1 to v2.
+    public ModelPresolve(DataStorer data, EdgeIndex edgeIndex, double numYears, double pipeUtilization, String modelVersion, boolean enabled) {
+        Source[] sources = data.getSources();
+        Sink[] sinks = data.getSinks();
+        LinearComponent[] linearComponents = data.getLinearComponents();
+        Edge[] edges = edgeIndex.getEdges();
+        double[] edgeConstructionCosts = edgeIndex.getConstructionCosts();
+        double[] edgeRightOfWayCosts = edgeIndex.getRightOfWayCosts();
+        int numTrends = linearComponents.length;
+
+        flowBounds = new double[edges.length * 2];
+        trendUsed = new boolean[edges.length * 2][numTrends];
+        sourceUsed = new boolean[sources.length];
+        sinkUsed = new boolean[sinks.length];
+        Arrays.fill(sourceUsed, true);
+        Arrays.fill(sinkUsed, true);
+        for (boolean[] used : trendUsed) {
+            Arrays.fill(used, true);
+        }
+        countOriginalSize(data, edges.length * 2, numTrends, modelVersion);
+
+        if (!enabled) {
+            Arrays.fill(flowBounds, Double.MAX_VALUE);
+            return;
+        }
+
+        FlowBounds bounds = new FlowBounds(data, numYears);
+        flowBounds = bounds.getEdgeBounds();
+
+        // Facilities in components without the other kind of facility.
+        for (int i = 0; i < sources.length; i++) {
+            sourceUsed[i] = bounds.getComponentStorage(sources[i].getCellNum()) > 0;
+        }
+        for (int i = 0; i < sinks.length; i++) {
+            sinkUsed[i] = bounds.getComponentSupply(sinks[i].getCellNum()) > 0;
+        }
+
+        // Trends. Trend c can carry up to min(capacity, bound); it is left out if a trend that is still
+        // in carries as much and costs no more at no flow and at that flow, so costs no more anywhere
+        // in between. Costs are per edge, without the common crf factor.
+        double[] intercepts = new double[numTrends];
+        double[] slopes = new double[numTrends];
+        for (int k = 0; k < edges.length; k++) {
+            double constructionCost = edgeConstructionCosts[k];
+            double rightOfWayCost = edgeRightOfWayCosts[k];
+            for (int c = 0; c < numTrends; c++) {
+                intercepts[c] = linearComponents[c].getConIntercept() * constructionCost + linearComponents[c].getRowIntercept() * rightOfWayCost;
+                slopes[c] = (linearComponents[c].getConSlope() * constructionCost + linearComponents[c].getRowSlope() * rightOfWayCost) / pipeUtilization;
+            }
+
+            for (int e = 2 * k; e <= 2 * k + 1; e++) {
+                for (int c = 0; c < numTrends; c++) {
+                    double flow = Math.min(linearComponents[c].getMaxCapacity(), flowBounds[e]);
+                    if (flowBounds[e] <= 0) {
+                        trendUsed[e][c] = false;
+                        continue;
+                    }
+                    for (int other = 0; other < numTrends; other++) {
+                        if (other != c && trendUsed[e][other] && linearComponents[other].getMaxCapacity() >= flow && intercepts[other] <= intercepts[c]
+                                && intercepts[other] + slopes[other] * flow <= intercepts[c] + slopes[c] * flow) {
+                            trendUsed[e][c] = false;
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // Flow bound of every directed edge, Double.MAX_VALUE without presolve.
+    public double[] getFlowBounds() {
+        return flowBounds;
+    }
+
+    public boolean isTrendUsed(int edge, int trend) {
+        return trendUsed[edge][trend];
+    }
+
+    // Whether any trend of the directed edge is used.
+    public boolean isEdgeUsed(int edge) {
+        for (boolean used : trendUsed[edge]) {
+            if (used) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isSourceUsed(int source) {
+        return sourceUsed[source];
+    }
+
+    public boolean isSinkUsed(int sink) {
+        return sinkUsed[sink];
+    }
+
+    public long getOriginalRows() {
+        return originalRows;
+    }
+
+    public long getOriginalColumns() {
+        return originalColumns;
+    }
+
+    public long getOriginalNonzeros() {
+        return originalNonzeros;
+    }
+
+    // Size before and after presolve.
+    public String getReport(MPSModel model) {
+        return String.format("Presolve: %d -> %d rows, %d -> %d columns, %d -> %d nonzeros", originalRows, model.getNumRows(),
+                originalColumns, model.getNumColumns(), originalNonzeros, model.getNumNonzeros());
+    }
+
+    // Rows, columns and terms writeCapPriceMPS creates when nothing is left out.
+    private void countOriginalSize(DataStorer data, long numEdges, long numTrends, String modelVersion) {
+        long numSources = data.getSources().length;
+        long numSinks = data.getSinks().length;
+        CandidateGraph graph = data.getCandidateGraph();
+        long facilitiesOnGraph = 0;
+        for (Source source : data.getSources()) {
+            if (graph.getVertex(source.getCellNum()) >= 0) {
+                facilitiesOnGraph++;
+            }
+        }
+        for (Sink sink : data.getSinks()) {
+            if (graph.getVertex(sink.getCellNum()) >= 0) {
+                facilitiesOnGraph++;
+            }
+        }
+        long cap = modelVersion.equals("c") ? 1 : 0;
+
+        // A, B, C, D, E, F, G, H and OBJ rows
+        originalRows = 2 * numEdges * numTrends + numEdges + graph.getNumVertices() + numSources + 2 * numSinks + cap + 3 + 1;
+        // s, a, r, b, w, y, p and the 3 constants
+        originalColumns = 2 * numSources + 3 * numSinks + 2 * numEdges * numTrends + 3;
+        originalNonzeros = 3 * numEdges * numTrends + numEdges * numTrends + 2 * numEdges * numTrends + facilitiesOnGraph
+                + 2 * numSources + 4 * numSinks + cap * numSources + 3 + 2 * numSources + 2 * numEdges * numTrends + 3 * numSinks;
+    }
+}
@@ -0,0 +1,314 @@
+package solver;
+
+import dataStore.CostRaster;
+import dataStore.DataStorer;
+import java.util.Arrays;
+
+/**
+ * Single source, single destination searches over the 8-connected cost
+ * raster: bidirectional Dijkstra and A* with an octile lower bound. Both
+ * return a shortest path but may break ties differently from Solver.dijkstra.
+ * A* does not take the neighbor steps that wrap from one side of the raster
+ * to the other, since the bound only holds for geometric moves.
+ *
+ * @author yaw
+ */
+public class PairSearch {
+
+    private DataStorer data;
+    private int width;
+    private int numCells;
+    private int[] offsets;
+    private int[] weightDirections;
+    private int[] reverseWeightDirections;
+
+    // Forward and backward search state, valid while the state matches the current stamp.
+    private double[][] costs = new double[2][];
+    private int[][] links = new int[2][];    // Previous cell forward, next cell backward
+    private int[][] states = new int[2][];
+    private Heap[] heaps = new Heap[]{new Heap(), new Heap()};
+    private int stamp;
+    private int numSettled;
+
+    // Smallest orthogonal and diagonal routing cost, for the A* bound.
+    private CostRaster boundCosts;
+    private double minOrthogonal;
+    private double minDiagonal;
+
+    public PairSearch(DataStorer data) {
+        this.data = data;
+        width = data.getWidth();
+        numCells = data.getWidth() * data.getHeight();
+
+        offsets = new int[]{-width - 1, -width, -width + 1, 1, width + 1, width, width - 1, -1};
+        weightDirections = new int[8];
+        reverseWeightDirections = new int[8];
+        for (int dir = 0; dir < 8; dir++) {
+            weightDirections[dir] = firstDirection(offsets[dir]);
+            reverseWeightDirections[dir] = firstDirection(-offsets[dir]);
+        }
+
+        for (int side = 0; side < 2; side++) {
+            costs[side] = new double[numCells + 1];
+            links[side] = new int[numCells + 1];
+            states[side] = new int[numCells + 1];
+        }
+    }
+
+    // True if the search buffers still match the raster dimensions.
+    public boolean fits(DataStorer data) {
+        return this.data == data && width == data.getWidth() && numCells == data.getWidth() * data.getHeight();
+    }
+
+    // Grow a forward search from src and a backward search from dest, always expanding the side
+    // with the smaller frontier, until no path through the frontiers can beat the best meeting.
+    // Returns an empty path if dest cannot be reached.
+    public int[] bidirectional(int src, int dest, CostRaster weights) {
+        reset();
+        if (src == dest) {
+            return new int[]{src};
+        }
+        label(0, src, 0, -1);
+        label(1, dest, 0, -1);
+
+        double best = Double.MAX_VALUE;
+        int meetFrom = -1;
+        int meetTo = -1;
+        while (true) {
+            double forwardTop = topCost(0);
+            double backwardTop = topCost(1);
+            if (forwardTop == Double.MAX_VALUE || backwardTop == Double.MAX_VALUE || forwardTop + backwardTop >= best) {
+                break;
+            }
+            int side = forwardTop <= backwardTop ? 0 : 1;
+            int u = heaps[side].poll();
+            states[side][u] = stamp + 1;
+            numSettled++;
+
+            for (int dir = 0; dir < 8; dir++) {
+                int v = u + offsets[dir];
+                if (v < 1 || v > numCells || states[side][v] == stamp + 1) {
+                    continue;
+                }
+                // Backward edges run v -> u, so read the weight stored at v.
+                double weight = side == 0 ? weights.getCost(u, weightDirections[dir]) : weights.getCost(v, reverseWeightDirections[dir]);
+                double altDistance = costs[side][u] + weight;
+                if (altDistance < cost(side, v)) {
+                    label(side, v, altDistance, u);
+                }
+                if (states[1 - side][v] >= stamp && altDistance + costs[1 - side][v] < best) {
+                    best = altDistance + costs[1 - side][v];
+                    meetFrom = side == 0 ? u : v;
+                    meetTo = side == 0 ? v : u;
+                }
+            }
+        }
+
+        // Forward links up to the meeting edge, backward links after it.
+        int length = 0;
+        for (int cell = meetFrom; cell != -1; cell = links[0][cell]) {
+            length++;
+        }
+        for (int cell = meetTo; cell != -1; cell = links[1][cell]) {
+            length++;
+        }
+        int[] path = new int[length];
+        int i = 0;
+        for (int cell = meetFrom; cell != -1; cell = links[0][cell]) {
+            path[i++] = cell;
+        }
+        reverse(path, i);
+        for (int cell = meetTo; cell != -1; cell = links[1][cell]) {
+            path[i++] = cell;
+        }
+        return path;
+    }
+
+    // A* from src to dest. Weights must be no smaller than minFactor times the routing costs.
+    // Returns an empty path if dest cannot be reached.
+    public int[] aStar(int src, int dest, CostRaster weights, double minFactor) {
+        reset();
+        updateBound();
+        double orthogonalStep = Math.min(minOrthogonal, minDiagonal) * minFactor;
+        double diagonalStep = Math.min(minDiagonal, 2 * minOrthogonal) * minFactor;
+        int destX = (dest - 1) % width;
+        int destY = (dest - 1) / width;
+
+        label(0, src, 0, -1);
+        while (heaps[0].size > 0) {
+            int u = heaps[0].poll();
+            if (states[0][u] == stamp + 1) {
+                continue;
+            }
+            states[0][u] = stamp + 1;
+            numSettled++;
+            if (u == dest) {
+                break;
+            }
+
+            int uX = (u - 1) % width;
+            for (int dir = 0; dir < 8; dir++) {
+                int v = u + offsets[dir];
+                if (v < 1 || v > numCells || states[0][v] == stamp + 1 || Math.abs((v - 1) % width - uX) > 1) {
+                    continue;
+                }
+                double altDistance = costs[0][u] + weights.getCost(u, weightDirections[dir]);
+                if (altDistance < cost(0, v)) {
+                    costs[0][v] = altDistance;
+                    links[0][v] = u;
+                    states[0][v] = stamp;
+                    // Octile distance on a grid where every step costs its cheapest possible amount.
+                    int dx = Math.abs((v - 1) % width - destX);
+                    int dy = Math.abs((v - 1) / width - destY);
+                    double bound = Math.min(dx, dy) * diagonalStep + Math.abs(dx - dy) * orthogonalStep;
+                    heaps[0].push(v, altDistance + bound);
+                }
+            }
+        }
+
+        if (states[0][dest] != stamp + 1) {
+            return new int[0];
+        }
+        int length = 0;
+        for (int cell = dest; cell != -1; cell = links[0][cell]) {
+            length++;
+        }
+        int[] path = new int[length];
+        int i = 0;
+        for (int cell = dest; cell != -1; cell = links[0][cell]) {
+            path[i++] = cell;
+        }
+        reverse(path, i);
+        return path;
+    }
+
+    // Number of cells settled by the last search.
+    public int getNumSettled() {
+        return numSettled;
+    }
+
+    private void reset() {
+        stamp += 2;
+        if (stamp >= Integer.MAX_VALUE - 2) {
+            Arrays.fill(states[0], 0);
+            Arrays.fill(states[1], 0);
+            stamp = 2;
+        }
+        heaps[0].clear();
+        heaps[1].clear();
+        numSettled = 0;
+    }
+
+    private void label(int side, int cell, double cost, int link) {
+        costs[side][cell] = cost;
+        links[side][cell] = link;
+        states[side][cell] = stamp;
+        heaps[side].push(cell, cost);
+    }
+
+    private double cost(int side, int cell) {
+        return states[side][cell] >= stamp ? costs[side][cell] : Double.MAX_VALUE;
+    }
+
+    // Smallest key of a cell not yet settled on that side.
+    private double topCost(int side) {
+        Heap heap = heaps[side];
+        while (heap.size > 0 && states[side][heap.cells[0]] == stamp + 1) {
+            heap.poll();
+        }
+        return heap.size > 0 ? heap.keys[0] : Double.MAX_VALUE;
+    }
+
+    private void updateBound() {
+        CostRaster routingCosts = data.getRoutingCosts();
+        if (boundCosts == routingCosts) {
+            return;
+        }
+        boundCosts = routingCosts;
+        minOrthogonal = Double.MAX_VALUE;
+        minDiagonal = Double.MAX_VALUE;
+        for (int cell = 1; cell <= routingCosts.getNumCells(); cell++) {
+            for (int dir = 0; dir < 8; dir++) {
+                if (dir % 2 == 0) {
+                    minDiagonal = Math.min(minDiagonal, routingCosts.getCost(cell, dir));
+                } else {
+                    minOrthogonal = Math.min(minOrthogonal, routingCosts.getCost(cell, dir));
+                }
+            }
+        }
+    }
+
+    private int firstDirection(int offset) {
+        for (int dir = 0; dir < 8; dir++) {
+            if (offsets[dir] == offset) {
+                return dir;
+            }
+        }
+        return -1;
+    }
+
+    private static void reverse(int[] path, int length) {
+        for (int i = 0; i < length / 2; i++) {
+            int temp = path[i];
+            path[i] = path[length - 1 - i];
+            path[length - 1 - i] = temp;
+        }
+    }
+
+    // Binary min-heap of cells keyed by cost, with stale entries skipped on poll.
+    private static class Heap {
+
+        int[] cells = new int[1024];
+        double[] keys = new double[1024];
+        int size;
+
+        void clear() {
+            size = 0;
+        }
+
+        void push(int cell, double key) {
+            if (size == cells.length) {
+                cells = Arrays.copyOf(cells, size * 2);
+                keys = Arrays.copyOf(keys, size * 2);
+            }
+            int k = size++;
+            while (k > 0) {
+                int parent = (k - 1) >>> 1;
+                if (key >= keys[parent]) {
+                    break;
+                }
+                cells[k] = cells[parent];
+                keys[k] = keys[parent];
+                k = parent;
+            }
+            cells[k] = cell;
+            keys[k] = key;
+        }
+
+        int poll() {
+            int result = cells[0];
+            int n = --size;
+            if (n > 0) {
+                int cell = cells[n];
+                double key = keys[n];
+                int k = 0;
+                int half = n >>> 1;
+                while (k < half) {
+                    int child = (k << 1) + 1;
+                    if (child + 1 < n && keys[child + 1] < keys[child]) {
+                        child++;
+                    }
+                    if (key <= keys[child]) {
+                        break;
+                    }
+                    cells[k] = cells[child];
+                    keys[k] = keys[child];
+                    k = child;
+                }
+                cells[k] = cell;
+                keys[k] = key;
+            }
+            return result;
+        }
+    }
+}
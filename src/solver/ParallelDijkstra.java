@@ -0,0 +1,227 @@
+package solver;
+
+import dataStore.CostRaster;
+import dataStore.DataStorer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs a sequence of single-source searches over a worker pool, each worker
+ * with its own DijkstraEngine. Results are returned in job order.
+ *
+ * @author yaw
+ */
+public class ParallelDijkstra {
+
+    private DataStorer data;
+    private int numThreads;
+    private DijkstraEngine[] engines;
+
+    // Weight slots lowered by committed paths, in commit order, and their values before the round.
+    private int[] changedCells = new int[1024];
+    private int[] changedSlots = new int[1024];
+    private int numChanged;
+    private HashMap<Long, Double> originalWeights = new HashMap<>();
+
+    public ParallelDijkstra(DataStorer data, int numThreads) {
+        this.data = data;
+        this.numThreads = Math.max(1, numThreads);
+        engines = new DijkstraEngine[this.numThreads];
+    }
+
+    // Same paths, costs and modified routing costs as calling Solver.dijkstra for each job in turn.
+    // A round of jobs is searched in parallel against the current weights, then committed in order.
+    // A later job in the round is only kept if none of the edges discounted ahead of it would have
+    // changed a decision of its search; the round ends at the first job that fails, and that job
+    // is searched again at the start of the next round. The round size shrinks to what was kept
+    // and grows back while whole rounds are kept, so heavily interacting jobs run close to serially.
+    public Object[] runDeterministic(int[] sources, int[][] destinations, double edgeCostModification) {
+        ArrayList<int[]> paths = new ArrayList<>();
+        ArrayList<Double> pathCosts = new ArrayList<>();
+        CostRaster weights = data.getModifiedRoutingCosts();
+
+        ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+        try {
+            int next = 0;
+            int window = numThreads;
+            while (next < sources.length) {
+                int roundSize = Math.min(window, sources.length - next);
+                numChanged = 0;
+                originalWeights.clear();
+
+                ArrayList<Future<?>> searches = new ArrayList<>();
+                for (int i = 0; i < roundSize; i++) {
+                    DijkstraEngine engine = getEngine(i);
+                    int job = next + i;
+                    searches.add(pool.submit(() -> engine.search(sources[job], destinations[job], weights)));
+                }
+                waitFor(searches);
+
+                int committed = 0;
+                for (int i = 0; i < roundSize; i++) {
+                    int job = next + i;
+                    if (numChanged > 0 && !engines[i].unaffected(weights, originalWeights, changedCells, changedSlots, numChanged)) {
+                        break;
+                    }
+                    commit(engines[i], sources[job], destinations[job], weights, edgeCostModification, paths, pathCosts);
+                    committed++;
+                }
+                next += committed;
+                window = committed == roundSize ? Math.min(numThreads, window * 2) : committed;
+            }
+        } finally {
+            pool.shutdown();
+        }
+        return new Object[]{paths, pathCosts};
+    }
+
+    // Every job searched on the unmodified routing costs, so no search waits on another.
+    public Object[] runIndependent(int[] sources, int[][] destinations) {
+        CostRaster weights = data.getRoutingCosts();
+        int[][][] jobPaths = new int[sources.length][][];
+
+        ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+        try {
+            searchJobs(sources, destinations, weights, 0, sources.length, jobPaths, pool, idleEngines());
+        } finally {
+            pool.shutdown();
+        }
+
+        ArrayList<int[]> paths = new ArrayList<>();
+        ArrayList<Double> pathCosts = new ArrayList<>();
+        for (int[][] pathsOfJob : jobPaths) {
+            for (int[] path : pathsOfJob) {
+                paths.add(path);
+                pathCosts.add(pathCost(path));
+            }
+        }
+        return new Object[]{paths, pathCosts};
+    }
+
+    // Jobs are searched in fixed-size waves against the current weights; once a wave is done, its
+    // paths are discounted in job order before the next wave starts. The result depends only on the
+    // job order and wave size, never on the number of threads or their timing.
+    public int[][][] runWaves(int[] sources, int[][] destinations, double edgeCostModification, int waveSize) {
+        CostRaster weights = data.getModifiedRoutingCosts();
+        int[][][] jobPaths = new int[sources.length][][];
+
+        ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+        try {
+            BlockingQueue<DijkstraEngine> idleEngines = idleEngines();
+            for (int waveStart = 0; waveStart < sources.length; waveStart += waveSize) {
+                int waveEnd = Math.min(sources.length, waveStart + waveSize);
+                searchJobs(sources, destinations, weights, waveStart, waveEnd, jobPaths, pool, idleEngines);
+
+                // Merge
+                for (int job = waveStart; job < waveEnd; job++) {
+                    for (int[] path : jobPaths[job]) {
+                        for (int i = 0; i < path.length - 1; i++) {
+                            data.updateModifiedEdgeRoutingCost(path[i], path[i + 1], edgeCostModification);
+                            data.updateModifiedEdgeRoutingCost(path[i + 1], path[i], edgeCostModification);
+                        }
+                    }
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+        return jobPaths;
+    }
+
+    // Search jobs [from, to) concurrently, storing the paths to each job's destinations.
+    private void searchJobs(int[] sources, int[][] destinations, CostRaster weights, int from, int to, int[][][] jobPaths, ExecutorService pool, BlockingQueue<DijkstraEngine> idleEngines) {
+        ArrayList<Future<?>> searches = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            int job = i;
+            searches.add(pool.submit(() -> {
+                DijkstraEngine engine = idleEngines.take();
+                try {
+                    engine.search(sources[job], destinations[job], weights);
+                    jobPaths[job] = new int[destinations[job].length][];
+                    for (int k = 0; k < destinations[job].length; k++) {
+                        jobPaths[job][k] = engine.getPath(sources[job], destinations[job][k]);
+                    }
+                } finally {
+                    idleEngines.add(engine);
+                }
+                return null;
+            }));
+        }
+        waitFor(searches);
+    }
+
+    private BlockingQueue<DijkstraEngine> idleEngines() {
+        BlockingQueue<DijkstraEngine> idleEngines = new ArrayBlockingQueue<>(numThreads);
+        for (int i = 0; i < numThreads; i++) {
+            idleEngines.add(getEngine(i));
+        }
+        return idleEngines;
+    }
+
+    // Take the paths of a finished search and discount their edges, logging every slot that changed.
+    private void commit(DijkstraEngine engine, int src, int[] destinations, CostRaster weights, double edgeCostModification, ArrayList<int[]> paths, ArrayList<Double> pathCosts) {
+        for (int dest : destinations) {
+            int[] path = engine.getPath(src, dest);
+            for (int i = 0; i < path.length - 1; i++) {
+                discount(path[i], path[i + 1], weights, edgeCostModification);
+                discount(path[i + 1], path[i], weights, edgeCostModification);
+            }
+            paths.add(path);
+            pathCosts.add(pathCost(path));
+        }
+    }
+
+    private void discount(int cell1, int cell2, CostRaster weights, double edgeCostModification) {
+        int slot = data.getNeighborNum(cell1, cell2);
+        if (slot < 0) {
+            return;
+        }
+        double oldWeight = weights.getCost(cell1, slot);
+        data.updateModifiedEdgeRoutingCost(cell1, cell2, edgeCostModification);
+        if (weights.getCost(cell1, slot) != oldWeight) {
+            originalWeights.putIfAbsent(DijkstraEngine.slotKey(cell1, slot), oldWeight);
+            if (numChanged == changedCells.length) {
+                changedCells = Arrays.copyOf(changedCells, numChanged * 2);
+                changedSlots = Arrays.copyOf(changedSlots, numChanged * 2);
+            }
+            changedCells[numChanged] = cell1;
+            changedSlots[numChanged] = slot;
+            numChanged++;
+        }
+    }
+
+    private double pathCost(int[] path) {
+        double cost = 0;
+        for (int i = 0; i < path.length - 1; i++) {
+            cost += data.getEdgeWeight(path[i], path[i + 1], "c");
+        }
+        return cost;
+    }
+
+    private DijkstraEngine getEngine(int i) {
+        if (engines[i] == null) {
+            engines[i] = new DijkstraEngine(data);
+        }
+        return engines[i];
+    }
+
+    private void waitFor(ArrayList<Future<?>> futures) {
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+}
@@ -8,7 +8,6 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.PriorityQueue;
 import javafx.scene.control.TextArea;
 import static utilities.Utilities.*;
@@ -21,6 +20,15 @@ public class Solver {
 
     private DataStorer data;
     private TextArea messenger;
+    private DijkstraEngine dijkstraEngine;
+    private boolean legacyDijkstra = false; // Use the original object-per-cell search
+    private String pathMode = "s";  // All-pairs paths: s - serial, d - deterministic parallel, i - independent parallel
+    private String graphMode = "s"; // Delaunay candidate graph: s - serial, g - grouped parallel
+    private String pairStrategy = "d";  // Single pair routing: d - dijkstra, b - bidirectional dijkstra, a - A*
+    private PairSearch pairSearch;
+    private long numSettled;    // Cells settled by routing searches since the last reset
+    private int numThreads = Runtime.getRuntime().availableProcessors();
+    private static final int GROUPS_PER_WAVE = 32;  // Grouped searches sharing one set of discounted costs
 
     public Solver(DataStorer data) {
         this.data = data;
@@ -81,12 +89,31 @@ public class Solver {
             }
             messenger.setText(message);
         } else {
-            for (int nodeNum = 0; nodeNum < sourcesAndSinks.length - 1; nodeNum++) {
-                int[] destinations = new int[sourcesAndSinks.length - nodeNum - 1];
-                System.arraycopy(sourcesAndSinks, nodeNum + 1, destinations, 0, destinations.length);
-                Object[] sourcePathsAndCosts = dijkstra(sourcesAndSinks[nodeNum], destinations, .9999999);
-                allPathsList.addAll((ArrayList<int[]>) sourcePathsAndCosts[0]);
-                allPathCostsList.addAll((ArrayList<Double>) sourcePathsAndCosts[1]);
+            if (pathMode.equals("s")) {
+                for (int nodeNum = 0; nodeNum < sourcesAndSinks.length - 1; nodeNum++) {
+                    int[] destinations = new int[sourcesAndSinks.length - nodeNum - 1];
+                    System.arraycopy(sourcesAndSinks, nodeNum + 1, destinations, 0, destinations.length);
+                    Object[] sourcePathsAndCosts = dijkstra(sourcesAndSinks[nodeNum], destinations, .9999999);
+                    allPathsList.addAll((ArrayList<int[]>) sourcePathsAndCosts[0]);
+                    allPathCostsList.addAll((ArrayList<Double>) sourcePathsAndCosts[1]);
+                }
+            } else {
+                int[] sources = new int[sourcesAndSinks.length - 1];
+                int[][] destinations = new int[sourcesAndSinks.length - 1][];
+                for (int nodeNum = 0; nodeNum < sourcesAndSinks.length - 1; nodeNum++) {
+                    sources[nodeNum] = sourcesAndSinks[nodeNum];
+                    destinations[nodeNum] = new int[sourcesAndSinks.length - nodeNum - 1];
+                    System.arraycopy(sourcesAndSinks, nodeNum + 1, destinations[nodeNum], 0, destinations[nodeNum].length);
+                }
+                ParallelDijkstra parallel = new ParallelDijkstra(data, numThreads);
+                Object[] pathsAndCosts;
+                if (pathMode.equals("d")) {
+                    pathsAndCosts = parallel.runDeterministic(sources, destinations, .9999999);
+                } else {
+                    pathsAndCosts = parallel.runIndependent(sources, destinations);
+                }
+                allPathsList.addAll((ArrayList<int[]>) pathsAndCosts[0]);
+                allPathCostsList.addAll((ArrayList<Double>) pathsAndCosts[1]);
             }
             int[][] allPaths = allPathsList.toArray(new int[0][0]);
             double[] allPathCosts = convertDoubleArray(allPathCostsList.toArray(new Double[0]));
@@ -101,21 +128,95 @@ public class Solver {
         return d.run(locations);
     }
 
-    // Delaunay-based candidate graph.
+    public Triangulation generateDelaunayTriangulation() {
+        Delaunay d = new Delaunay(data);
+        return d.triangulate(data.getSourceSinkCells());
+    }
+
+    // Bring a triangulation up to date with the sources and sinks, leaving the pairs that changed
+    // in its added and removed pairs.
+    public void updateDelaunayTriangulation(Triangulation triangulation) {
+        Delaunay d = new Delaunay(data);
+        d.update(triangulation, data.getSourceSinkCells());
+    }
+
+    // Delaunay-based candidate graph: vertices, edge costs, edge routes and the route of each pair.
     public Object[] generateDelaunayCandidateGraph() {
         //data.generateDelaunayPairs();
         HashSet<Edge> delaunayPairs = data.getDelaunayPairs();
+        resetNumSettled();
+
+        // Route each pair
+        ArrayList<int[]> pairPaths = new ArrayList<>();
+        if (graphMode.equals("g")) {
+            pairPaths = routeGroupedPairs(delaunayPairs);
+        } else {
+            for (Edge pair : delaunayPairs) {
+                pairPaths.add(routePair(pair.v1, pair.v2, .9999999));
+            }
+        }
+        System.out.println("Routed " + delaunayPairs.size() + " Delaunay pairs, " + numSettled + " cells settled.");
+
+        return buildDelaunayCandidateGraph(toPairRoutes(pairPaths));
+    }
+
+    // Delaunay-based candidate graph for the current pairs, reusing the routes of pairs that were
+    // routed before. Discounts left by earlier runs are dropped, the kept routes are discounted
+    // as they would have been had the new pairs been routed after them, and then only the new
+    // pairs are routed.
+    public Object[] updateDelaunayCandidateGraph(HashMap<Edge, int[]> previousPairRoutes) {
+        HashSet<Edge> delaunayPairs = data.getDelaunayPairs();
+        resetNumSettled();
+        data.clearModifiedRoutingCosts();
+        HashMap<Edge, int[]> pairRoutes = new HashMap<>();
+        HashSet<Edge> newPairs = new HashSet<>();
+        for (Edge pair : delaunayPairs) {
+            int[] route = previousPairRoutes.get(pair);
+            if (route != null) {
+                pairRoutes.put(pair, route);
+                for (int i = 0; i < route.length - 1; i++) {
+                    data.updateModifiedEdgeRoutingCost(route[i], route[i + 1], .9999999);
+                    data.updateModifiedEdgeRoutingCost(route[i + 1], route[i], .9999999);
+                }
+            } else {
+                newPairs.add(pair);
+            }
+        }
+
+        ArrayList<int[]> pairPaths = new ArrayList<>();
+        if (graphMode.equals("g") && !newPairs.isEmpty()) {
+            pairPaths = routeGroupedPairs(newPairs);
+        } else {
+            for (Edge pair : newPairs) {
+                pairPaths.add(routePair(pair.v1, pair.v2, .9999999));
+            }
+        }
+        pairRoutes.putAll(toPairRoutes(pairPaths));
+        System.out.println("Kept " + (delaunayPairs.size() - newPairs.size()) + " routed pairs, routed " + newPairs.size() + " new Delaunay pairs, " + numSettled + " cells settled.");
+
+        return buildDelaunayCandidateGraph(pairRoutes);
+    }
+
+    // Routes by the pair of cells they join.
+    private static HashMap<Edge, int[]> toPairRoutes(ArrayList<int[]> pairPaths) {
+        HashMap<Edge, int[]> pairRoutes = new HashMap<>();
+        for (int[] path : pairPaths) {
+            if (path.length > 1) {
+                pairRoutes.put(new Edge(path[0], path[path.length - 1]), path);
+            }
+        }
+        return pairRoutes;
+    }
+
+    // Candidate graph made of the union of the pair routes, with degree 2 vertices contracted.
+    private Object[] buildDelaunayCandidateGraph(HashMap<Edge, int[]> pairRoutes) {
         HashMap<Edge, Double> graphEdgeCosts = new HashMap<>();
         HashMap<Edge, int[]> graphEdgeRoutes = new HashMap<>();
         HashMap<Integer, HashSet<Integer>> vertexNeighbors = new HashMap<>();    // Neighbors of a given vertex
         HashSet<Integer> sourceSinksList = new HashSet<>(); // List of source and sink vertices
-        HashSet<Integer> degree2Vertices = new HashSet<>(); // Non-source/sink vertices with degree 2
 
         // Populate initial costs, routes, and neighbors
-        for (Edge pair : delaunayPairs) {
-            int pair2List[] = {pair.v2};
-            int[] path = ((ArrayList<int[]>) (dijkstra(pair.v1, pair2List, .9999999)[0])).get(0);
-
+        for (int[] path : pairRoutes.values()) {
             for (int i = 0; i < path.length - 1; i++) {
                 Edge e = new Edge(path[i], path[i + 1]);
                 graphEdgeCosts.put(e, data.getEdgeWeight(path[i], path[i + 1], "c"));
@@ -138,96 +239,230 @@ public class Solver {
             sourceSinksList.add(cell);
         }
 
-        // Make set of removable degree 2 vertices
+        // Reduce degree 2 vertices
+        contractDegree2Chains(vertexNeighbors, sourceSinksList, graphEdgeCosts, graphEdgeRoutes);
+
+        int[] vertices = new int[vertexNeighbors.keySet().size()];
+        int i = 0;
+        for (int vertex : vertexNeighbors.keySet()) {
+            vertices[i++] = vertex;
+        }
+        Arrays.sort(vertices);
+        return new Object[]{vertices, graphEdgeCosts, graphEdgeRoutes, pairRoutes};
+    }
+
+    // Replace every maximal chain of removable vertices (not a source or sink, degree 2) by one edge,
+    // walking each chain once. Contracting never changes the degree of the vertices left, so the
+    // chains are known up front. A chain whose ends already share an edge keeps its last vertex, and
+    // a chain from a vertex back to itself keeps two, so no multi-edges or self loops are made.
+    private void contractDegree2Chains(HashMap<Integer, HashSet<Integer>> vertexNeighbors, HashSet<Integer> sourceSinks, HashMap<Edge, Double> graphEdgeCosts,
+            HashMap<Edge, int[]> graphEdgeRoutes) {
+        HashSet<Integer> removable = new HashSet<>();
         for (int vertex : vertexNeighbors.keySet()) {
-            if (!sourceSinksList.contains(vertex) && vertexNeighbors.get(vertex).size() == 2) {
-                degree2Vertices.add(vertex);
+            if (!sourceSinks.contains(vertex) && vertexNeighbors.get(vertex).size() == 2) {
+                removable.add(vertex);
             }
         }
+        int[] vertices = convertIntegerArray(vertexNeighbors.keySet().toArray(new Integer[0]));
+        Arrays.sort(vertices);
 
-        // Reduce degree 2 vertices
-        boolean degree2Removed = true;
-        while (degree2Removed) {
-            degree2Removed = false;
-            for (Iterator<Integer> iter = degree2Vertices.iterator(); iter.hasNext();) {
-                int vertex = iter.next();
-                int[] neighbors = convertIntegerArray(vertexNeighbors.get(vertex).toArray(new Integer[0]));
-                // Only remove if it won't create multi-edges.
-                Edge newEdge = new Edge(neighbors[0], neighbors[1]);
-                if (!graphEdgeCosts.containsKey(newEdge)) {
-                    degree2Removed = true;
-
-                    // Get old edges
-                    Edge oldEdge1 = new Edge(neighbors[0], vertex);
-                    Edge oldEdge2 = new Edge(vertex, neighbors[1]);
-
-                    // Add new edge to edgeCosts
-                    double newCost = graphEdgeCosts.get(oldEdge1) + graphEdgeCosts.get(oldEdge2);
-                    graphEdgeCosts.put(newEdge, newCost);
-
-                    // Remove old edge from edgeCosts
-                    graphEdgeCosts.remove(oldEdge1);
-                    graphEdgeCosts.remove(oldEdge2);
-
-                    // Add route for new edge to edgeRoutes
-                    int[] oldRoute1 = graphEdgeRoutes.get(oldEdge1);
-                    int[] oldRoute2 = graphEdgeRoutes.get(oldEdge2);
-                    int[] newRoute = new int[oldRoute1.length + oldRoute2.length - 1];
-                    if (oldRoute1[oldRoute1.length - 1] == vertex) {
-                        for (int i = 0; i < oldRoute1.length; i++) {
-                            newRoute[i] = oldRoute1[i];
-                        }
-                    } else {
-                        for (int i = 0; i < oldRoute1.length; i++) {
-                            newRoute[oldRoute1.length - 1 - i] = oldRoute1[i];
-                        }
-                    }
-                    if (oldRoute2[0] == vertex) {
-                        for (int i = 1; i < oldRoute2.length; i++) {
-                            newRoute[i + oldRoute1.length - 1] = oldRoute2[i];
-                        }
-                    } else {
-                        for (int i = 0; i < oldRoute2.length - 1; i++) {
-                            newRoute[oldRoute1.length - 1 + oldRoute2.length - 1 - i] = oldRoute2[i];
-                        }
-                    }
-                    graphEdgeRoutes.put(newEdge, newRoute);
+        // Chains from each vertex that stays, in vertex and neighbor order.
+        HashSet<Integer> visited = new HashSet<>();
+        ArrayList<Integer> chain = new ArrayList<>();
+        for (int end : vertices) {
+            if (removable.contains(end)) {
+                continue;
+            }
+            int[] neighbors = convertIntegerArray(vertexNeighbors.get(end).toArray(new Integer[0]));
+            Arrays.sort(neighbors);
+            for (int first : neighbors) {
+                if (!removable.contains(first) || visited.contains(first)) {
+                    continue;
+                }
+                chain.clear();
+                chain.add(end);
+                int previous = end;
+                int current = first;
+                while (removable.contains(current)) {
+                    visited.add(current);
+                    chain.add(current);
+                    int next = otherNeighbor(vertexNeighbors.get(current), previous);
+                    previous = current;
+                    current = next;
+                }
+                chain.add(current);
+
+                int last = chain.size() - 1;
+                if (current == end) {
+                    mergeChain(chain, 1, last - 1, vertexNeighbors, graphEdgeCosts, graphEdgeRoutes);
+                } else if (!graphEdgeCosts.containsKey(new Edge(end, current))) {
+                    mergeChain(chain, 0, last, vertexNeighbors, graphEdgeCosts, graphEdgeRoutes);
+                } else {
+                    mergeChain(chain, 0, last - 1, vertexNeighbors, graphEdgeCosts, graphEdgeRoutes);
+                }
+            }
+        }
+
+        // Cycles of removable vertices only.
+        for (int start : vertices) {
+            if (!removable.contains(start) || visited.contains(start)) {
+                continue;
+            }
+            chain.clear();
+            chain.add(start);
+            visited.add(start);
+            int previous = start;
+            int current = vertexNeighbors.get(start).iterator().next();
+            while (current != start) {
+                visited.add(current);
+                chain.add(current);
+                int next = otherNeighbor(vertexNeighbors.get(current), previous);
+                previous = current;
+                current = next;
+            }
+            chain.add(start);
+            mergeChain(chain, 1, chain.size() - 2, vertexNeighbors, graphEdgeCosts, graphEdgeRoutes);
+        }
+    }
 
-                    // Remove route for old edge from edgeRoutes
-                    graphEdgeRoutes.remove(oldEdge1);
-                    graphEdgeRoutes.remove(oldEdge2);
+    private static int otherNeighbor(HashSet<Integer> neighbors, int neighbor) {
+        for (int other : neighbors) {
+            if (other != neighbor) {
+                return other;
+            }
+        }
+        return neighbor;
+    }
 
-                    // Add neighbors for endpoint of new edge to vertexNeighbors
-                    vertexNeighbors.get(neighbors[0]).add(neighbors[1]);
-                    vertexNeighbors.get(neighbors[0]).remove(vertex);
-                    vertexNeighbors.get(neighbors[1]).add(neighbors[0]);
-                    vertexNeighbors.get(neighbors[1]).remove(vertex);
+    // Replace the edges between chain.get(from) and chain.get(to) by one edge with their summed
+    // cost and joined route, if there is any vertex between them.
+    private static void mergeChain(ArrayList<Integer> chain, int from, int to, HashMap<Integer, HashSet<Integer>> vertexNeighbors, HashMap<Edge, Double> graphEdgeCosts,
+            HashMap<Edge, int[]> graphEdgeRoutes) {
+        if (to - from < 2) {
+            return;
+        }
+        double newCost = 0;
+        int routeLength = 1;
+        for (int i = from; i < to; i++) {
+            Edge oldEdge = new Edge(chain.get(i), chain.get(i + 1));
+            newCost += graphEdgeCosts.get(oldEdge);
+            routeLength += graphEdgeRoutes.get(oldEdge).length - 1;
+        }
 
-                    // Remove old vertex from vertexNeighbors
-                    vertexNeighbors.remove(vertex);
+        int[] newRoute = new int[routeLength];
+        int position = 0;
+        newRoute[position++] = chain.get(from);
+        for (int i = from; i < to; i++) {
+            Edge oldEdge = new Edge(chain.get(i), chain.get(i + 1));
+            int[] oldRoute = graphEdgeRoutes.get(oldEdge);
+            if (oldRoute[0] == chain.get(i)) {
+                for (int j = 1; j < oldRoute.length; j++) {
+                    newRoute[position++] = oldRoute[j];
+                }
+            } else {
+                for (int j = oldRoute.length - 2; j >= 0; j--) {
+                    newRoute[position++] = oldRoute[j];
+                }
+            }
+            graphEdgeCosts.remove(oldEdge);
+            graphEdgeRoutes.remove(oldEdge);
+        }
+        for (int i = from + 1; i < to; i++) {
+            vertexNeighbors.remove(chain.get(i));
+        }
+
+        int start = chain.get(from);
+        int end = chain.get(to);
+        vertexNeighbors.get(start).remove(chain.get(from + 1));
+        vertexNeighbors.get(start).add(end);
+        vertexNeighbors.get(end).remove(chain.get(to - 1));
+        vertexNeighbors.get(end).add(start);
+        Edge newEdge = new Edge(start, end);
+        graphEdgeCosts.put(newEdge, newCost);
+        graphEdgeRoutes.put(newEdge, newRoute);
+    }
 
-                    // Remove old vertex from degree2Vertices
-                    iter.remove();
+    // Route pairs with one search per shared endpoint. Endpoints are picked greedily by the number of
+    // pairs they still cover, and the searches run in parallel waves whose discounts are merged in
+    // group order, so the routes are the same on every run.
+    private ArrayList<int[]> routeGroupedPairs(HashSet<Edge> pairs) {
+        int[][] sortedPairs = new int[pairs.size()][];
+        int pairNum = 0;
+        for (Edge pair : pairs) {
+            sortedPairs[pairNum++] = new int[]{Math.min(pair.v1, pair.v2), Math.max(pair.v1, pair.v2)};
+        }
+        Arrays.sort(sortedPairs, (a, b) -> a[0] != b[0] ? Integer.compare(a[0], b[0]) : Integer.compare(a[1], b[1]));
+
+        // Unassigned pairs at each endpoint
+        HashMap<Integer, ArrayList<int[]>> endpointPairs = new HashMap<>();
+        for (int[] pair : sortedPairs) {
+            for (int endpoint : pair) {
+                if (!endpointPairs.containsKey(endpoint)) {
+                    endpointPairs.put(endpoint, new ArrayList<>());
                 }
+                endpointPairs.get(endpoint).add(pair);
             }
         }
-        int[] vertices = new int[vertexNeighbors.keySet().size()];
-        int i = 0;
-        for (int vertex : vertexNeighbors.keySet()) {
-            vertices[i++] = vertex;
+        int[] endpoints = convertIntegerArray(endpointPairs.keySet().toArray(new Integer[0]));
+        Arrays.sort(endpoints);
+        HashMap<Integer, Integer> remaining = new HashMap<>();
+        for (int endpoint : endpoints) {
+            remaining.put(endpoint, endpointPairs.get(endpoint).size());
+        }
+
+        ArrayList<Integer> centers = new ArrayList<>();
+        ArrayList<int[]> partners = new ArrayList<>();
+        HashSet<int[]> assigned = new HashSet<>();
+        int numUnassigned = sortedPairs.length;
+        while (numUnassigned > 0) {
+            int center = endpoints[0];
+            for (int endpoint : endpoints) {
+                if (remaining.get(endpoint) > remaining.get(center)) {
+                    center = endpoint;
+                }
+            }
+            ArrayList<Integer> centerPartners = new ArrayList<>();
+            for (int[] pair : endpointPairs.get(center)) {
+                if (assigned.add(pair)) {
+                    int partner = pair[0] == center ? pair[1] : pair[0];
+                    centerPartners.add(partner);
+                    remaining.put(partner, remaining.get(partner) - 1);
+                    numUnassigned--;
+                }
+            }
+            remaining.put(center, 0);
+            centers.add(center);
+            partners.add(convertIntegerArray(centerPartners.toArray(new Integer[0])));
         }
-        Arrays.sort(vertices);
-        return new Object[]{vertices, graphEdgeCosts, graphEdgeRoutes};
 
+        ParallelDijkstra parallel = new ParallelDijkstra(data, numThreads);
+        int[][][] groupPaths = parallel.runWaves(convertIntegerArray(centers.toArray(new Integer[0])), partners.toArray(new int[0][]), .9999999, GROUPS_PER_WAVE);
+        ArrayList<int[]> paths = new ArrayList<>();
+        for (int[][] pathsOfGroup : groupPaths) {
+            paths.addAll(Arrays.asList(pathsOfGroup));
+        }
+        return paths;
     }
 
     public Object[] makeComponentCosts() {
+        return makeComponentCosts(new HashMap<>(), null, null);
+    }
+
+    // Component costs, copied from the previous graph for edges whose route is unchanged.
+    public Object[] makeComponentCosts(HashMap<Edge, int[]> previousRoutes, HashMap<Edge, Double> previousRightOfWayCosts, HashMap<Edge, Double> previousConstructionCosts) {
         HashMap<Edge, int[]> graphEdgeRoutes = data.getGraphEdgeRoutes();
         HashMap<Edge, Double> constructionCosts = new HashMap<>();
         HashMap<Edge, Double> rightOfWayCosts = new HashMap<>();
 
         for (Edge edge : graphEdgeRoutes.keySet()) {
             int[] route = graphEdgeRoutes.get(edge);
+            int[] previousRoute = previousRoutes.get(edge);
+            if (previousRoute != null && previousRightOfWayCosts != null && previousConstructionCosts != null && previousRightOfWayCosts.containsKey(edge)
+                    && previousConstructionCosts.containsKey(edge) && Arrays.equals(previousRoute, route)) {
+                constructionCosts.put(edge, previousConstructionCosts.get(edge));
+                rightOfWayCosts.put(edge, previousRightOfWayCosts.get(edge));
+                continue;
+            }
             double constructionCost = 0;
             double rightOfWayCost = 0;
             for (int i = 0; i < route.length - 1; i++) {
@@ -269,8 +504,66 @@ public class Solver {
         return graphEdgeLengths;
     }
 
+    // Route a single pair with the selected strategy, discounting the edges of the route.
+    public int[] routePair(int src, int dest, double edgeCostModification) {
+        if (pairStrategy.equals("b")) {
+            return ((ArrayList<int[]>) bidirectionalDijkstra(src, dest, edgeCostModification)[0]).get(0);
+        } else if (pairStrategy.equals("a")) {
+            return ((ArrayList<int[]>) aStar(src, dest, edgeCostModification)[0]).get(0);
+        }
+        return ((ArrayList<int[]>) dijkstra(src, new int[]{dest}, edgeCostModification)[0]).get(0);
+    }
+
     // Modfidied dijkstra for operating on cost surface and allowing to change edge weights
     public Object[] dijkstra(int src, int[] destinations, double edgeCostModification) {
+        if (legacyDijkstra) {
+            return legacyDijkstra(src, destinations, edgeCostModification);
+        }
+        if (dijkstraEngine == null || !dijkstraEngine.fits(data)) {
+            dijkstraEngine = new DijkstraEngine(data);
+        }
+        Object[] pathsAndCosts = dijkstraEngine.run(src, destinations, edgeCostModification);
+        numSettled += dijkstraEngine.getNumSettled();
+        return pathsAndCosts;
+    }
+
+    // Bidirectional dijkstra between two cells, same result format as dijkstra.
+    public Object[] bidirectionalDijkstra(int src, int dest, double edgeCostModification) {
+        int[] path = getPairSearch().bidirectional(src, dest, data.getModifiedRoutingCosts());
+        return finishPairPath(path, edgeCostModification);
+    }
+
+    // A* between two cells, same result format as dijkstra.
+    public Object[] aStar(int src, int dest, double edgeCostModification) {
+        int[] path = getPairSearch().aStar(src, dest, data.getModifiedRoutingCosts(), data.getMinRoutingCostModification());
+        return finishPairPath(path, edgeCostModification);
+    }
+
+    private PairSearch getPairSearch() {
+        if (pairSearch == null || !pairSearch.fits(data)) {
+            pairSearch = new PairSearch(data);
+        }
+        return pairSearch;
+    }
+
+    private Object[] finishPairPath(int[] path, double edgeCostModification) {
+        numSettled += pairSearch.getNumSettled();
+
+        // Modify edge costs and recalculate real cost
+        double cost = 0;
+        for (int i = 0; i < path.length - 1; i++) {
+            cost += data.getEdgeWeight(path[i], path[i + 1], "c");
+            data.updateModifiedEdgeRoutingCost(path[i], path[i + 1], edgeCostModification);
+            data.updateModifiedEdgeRoutingCost(path[i + 1], path[i], edgeCostModification);
+        }
+        ArrayList<int[]> paths = new ArrayList<>();
+        ArrayList<Double> pathCosts = new ArrayList<>();
+        paths.add(path);
+        pathCosts.add(cost);
+        return new Object[]{paths, pathCosts};
+    }
+
+    private Object[] legacyDijkstra(int src, int[] destinations, double edgeCostModification) {
         HashSet<Integer> connectedDests = new HashSet<>();
         for (int cell : destinations) {
             connectedDests.add(cell);
@@ -340,6 +633,34 @@ public class Solver {
         return new Object[]{paths, pathCosts};
     }
 
+    public void setLegacyDijkstra(boolean legacyDijkstra) {
+        this.legacyDijkstra = legacyDijkstra;
+    }
+
+    public void setPathMode(String pathMode) {
+        this.pathMode = pathMode;
+    }
+
+    public void setGraphMode(String graphMode) {
+        this.graphMode = graphMode;
+    }
+
+    public void setPairStrategy(String pairStrategy) {
+        this.pairStrategy = pairStrategy;
+    }
+
+    public long getNumSettled() {
+        return numSettled;
+    }
+
+    public void resetNumSettled() {
+        numSettled = 0;
+    }
+
+    public void setNumThreads(int numThreads) {
+        this.numThreads = numThreads;
+    }
+
     public void setMessenger(TextArea messenger) {
         this.messenger = messenger;
     }
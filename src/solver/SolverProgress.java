@@ -0,0 +1,185 @@
+package solver;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Time series of a MIP solve, parsed from the CPLEX node log as the solver
+ * writes it: the best integer solution, best bound, gap and node count,
+ * with the time since the solve started. Stored next to the solver log as
+ * progress.csv.
+ *
+ * @author yaw
+ */
+public class SolverProgress {
+
+    public static final String PROGRESS_FILE = "progress.csv";
+    public static final String HEADER = "Seconds,Nodes,Incumbent,BestBound,Gap";
+
+    private ArrayList<Sample> samples = new ArrayList<>();
+    private double lastBound = Double.NaN;
+
+    // Sample from one solver output line, or null if the line is not a node log line. seconds is
+    // the time since the solve started.
+    public Sample parseLine(String line, double seconds) {
+        String[] tokens = line.trim().split("\\s+");
+        int t = 0;
+        boolean newIncumbent = false;
+        if (tokens[0].equals("*")) {
+            newIncumbent = true;
+            t++;
+        } else if (tokens[0].startsWith("*")) {
+            newIncumbent = true;
+            tokens[0] = tokens[0].substring(1);
+        }
+
+        // Node and nodes left, a trailing + marks an incumbent found by a heuristic.
+        if (tokens.length < t + 3 || !isCount(tokens[t]) || !isCount(tokens[t + 1])) {
+            return null;
+        }
+        boolean heuristic = tokens[t].endsWith("+");
+        long nodes = Long.parseLong(stripPlus(tokens[t]));
+        t += 2;
+
+        // Node relaxation value (or infeasible, cutoff, integral ...) and integer infeasibilities.
+        if (!heuristic) {
+            t++;
+            if (t < tokens.length && isInteger(tokens[t])) {
+                t++;
+            }
+        }
+
+        // Best integer, best bound (or a cut count), iterations and gap.
+        double gap = Double.NaN;
+        int end = tokens.length;
+        if (tokens[end - 1].endsWith("%")) {
+            gap = parseNumber(tokens[end - 1].substring(0, tokens[end - 1].length() - 1));
+            end--;
+        }
+        double incumbent = Double.NaN;
+        if ((!Double.isNaN(gap) || newIncumbent) && t < end && isDecimal(tokens[t])) {
+            incumbent = Double.parseDouble(tokens[t++]);
+        }
+        if (t < end && isDecimal(tokens[t])) {
+            lastBound = Double.parseDouble(tokens[t]);
+        }
+        if (Double.isNaN(gap) && !Double.isNaN(incumbent) && !Double.isNaN(lastBound)) {
+            gap = 100 * Math.abs(incumbent - lastBound) / (1e-10 + Math.abs(incumbent));
+        }
+
+        Sample sample = new Sample(seconds, nodes, incumbent, lastBound, gap);
+        samples.add(sample);
+        return sample;
+    }
+
+    public ArrayList<Sample> getSamples() {
+        return samples;
+    }
+
+    // Last sample, or null before the first.
+    public Sample getLatest() {
+        return samples.isEmpty() ? null : samples.get(samples.size() - 1);
+    }
+
+    // Samples stored in a run directory, empty if there are none.
+    public static SolverProgress load(File runDirectory) {
+        SolverProgress progress = new SolverProgress();
+        File file = new File(runDirectory, PROGRESS_FILE);
+        if (!file.exists()) {
+            return progress;
+        }
+        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+            br.readLine();
+            String line;
+            while ((line = br.readLine()) != null) {
+                String[] elements = line.split(",");
+                if (elements.length == 5) {
+                    progress.samples.add(new Sample(Double.parseDouble(elements[0]), Long.parseLong(elements[1]), Double.parseDouble(elements[2]),
+                            Double.parseDouble(elements[3]), Double.parseDouble(elements[4])));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            System.out.println(e.getMessage());
+        }
+        return progress;
+    }
+
+    private static boolean isCount(String token) {
+        return isInteger(stripPlus(token));
+    }
+
+    private static String stripPlus(String token) {
+        return token.endsWith("+") ? token.substring(0, token.length() - 1) : token;
+    }
+
+    private static boolean isInteger(String token) {
+        if (token.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < token.length(); i++) {
+            if (!Character.isDigit(token.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Objective values are printed with a decimal point, counts without.
+    private static boolean isDecimal(String token) {
+        return token.indexOf('.') >= 0 && !Double.isNaN(parseNumber(token));
+    }
+
+    private static double parseNumber(String token) {
+        try {
+            return Double.parseDouble(token);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    // One node log line.
+    public static class Sample {
+
+        private double seconds;
+        private long nodes;
+        private double incumbent;       // NaN until an integer solution is found
+        private double bestBound;       // NaN until the first bound
+        private double gap;             // Percent, NaN without an incumbent
+
+        public Sample(double seconds, long nodes, double incumbent, double bestBound, double gap) {
+            this.seconds = seconds;
+            this.nodes = nodes;
+            this.incumbent = incumbent;
+            this.bestBound = bestBound;
+            this.gap = gap;
+        }
+
+        public double getSeconds() {
+            return seconds;
+        }
+
+        public long getNodes() {
+            return nodes;
+        }
+
+        public double getIncumbent() {
+            return incumbent;
+        }
+
+        public double getBestBound() {
+            return bestBound;
+        }
+
+        public double getGap() {
+            return gap;
+        }
+
+        // Line of progress.csv.
+        public String toCSV() {
+            return seconds + "," + nodes + "," + incumbent + "," + bestBound + "," + gap;
+        }
+    }
+}
@@ -0,0 +1,426 @@
+package solver;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Runs a solver as a child process for each queued MPS file, at most a set
+ * number at a time. Every job gets its own run directory under Results
+ * holding a copy of the MPS file, an optional MIP start (start.mst), the
+ * solver commands (cplexCommands.txt, fed to the solver on standard input),
+ * the solver output (solver.log), the progress parsed from that output as it
+ * arrives (progress.csv) and the solution the solver writes. The command defaults to cplex on the PATH;
+ * anything that reads the same commands, like a stub script, can stand in
+ * for it.
+ *
+ * @author yaw
+ */
+public class SolverScheduler {
+
+    public enum Status {
+        QUEUED, RUNNING, FINISHED, FAILED, TIMED_OUT, CANCELLED, INTERRUPTED
+    }
+
+    public static final String COMMANDS_FILE = "cplexCommands.txt";
+    public static final String LOG_FILE = "solver.log";
+    public static final String SOLUTION_FILE = "solution.sol";
+
+    private ThreadPoolExecutor pool;
+    private ArrayList<Job> jobs = new ArrayList<>();
+    private String[] command = {"cplex"};
+    private int threadsPerJob = 0;          // 0 leaves the choice to the solver
+    private int memoryPerJob = 0;           // Working memory in MB, 0 for the solver default
+    private long timeoutSeconds = 0;        // 0 for no limit
+    private long killGraceSeconds = 60;     // Time past the limit to write the incumbent before a kill
+    private Consumer<Job> jobListener;
+    private BiConsumer<Job, SolverProgress.Sample> progressListener;
+
+    public SolverScheduler(int maxConcurrentJobs) {
+        pool = new ThreadPoolExecutor(maxConcurrentJobs, maxConcurrentJobs, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), runnable -> {
+            Thread thread = new Thread(runnable, "solver-job");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Queue mpsFile to be solved in runDirectory, which is created if needed. The MPS file is
+    // copied there unless it is already in it. A MIP start already in runDirectory is loaded too.
+    public synchronized Job submit(File mpsFile, File runDirectory) throws IOException {
+        runDirectory.mkdirs();
+        File mpsCopy = new File(runDirectory, mpsFile.getName());
+        if (!mpsCopy.getCanonicalFile().equals(mpsFile.getCanonicalFile())) {
+            Files.copy(mpsFile.toPath(), mpsCopy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        writeCommands(mpsCopy, runDirectory);
+
+        Job job = new Job(mpsCopy, runDirectory);
+        jobs.add(job);
+        job.future = pool.submit(() -> run(job));
+        return job;
+    }
+
+    // Jobs in the order they were submitted.
+    public synchronized ArrayList<Job> getJobs() {
+        return new ArrayList<>(jobs);
+    }
+
+    // Number of jobs queued or running.
+    public synchronized int getNumActiveJobs() {
+        int numActive = 0;
+        for (Job job : jobs) {
+            if (job.getStatus() == Status.QUEUED || job.getStatus() == Status.RUNNING) {
+                numActive++;
+            }
+        }
+        return numActive;
+    }
+
+    public synchronized void cancelAll() {
+        for (Job job : jobs) {
+            job.cancel();
+        }
+    }
+
+    // Solver command and arguments. {mps}, {dir}, {threads}, {memory} and {timeout} in an argument
+    // are replaced by the job's values.
+    public void setCommand(String... command) {
+        this.command = command.clone();
+    }
+
+    public void setMaxConcurrentJobs(int maxConcurrentJobs) {
+        if (maxConcurrentJobs > pool.getMaximumPoolSize()) {
+            pool.setMaximumPoolSize(maxConcurrentJobs);
+            pool.setCorePoolSize(maxConcurrentJobs);
+        } else {
+            pool.setCorePoolSize(maxConcurrentJobs);
+            pool.setMaximumPoolSize(maxConcurrentJobs);
+        }
+    }
+
+    public int getMaxConcurrentJobs() {
+        return pool.getMaximumPoolSize();
+    }
+
+    public void setThreadsPerJob(int threads) {
+        threadsPerJob = threads;
+    }
+
+    public void setMemoryPerJob(int megabytes) {
+        memoryPerJob = megabytes;
+    }
+
+    // Time limit given to the solver; jobs still running killGraceSeconds later are killed.
+    public void setTimeoutSeconds(long seconds) {
+        timeoutSeconds = seconds;
+    }
+
+    public void setKillGraceSeconds(long seconds) {
+        killGraceSeconds = seconds;
+    }
+
+    // Called from the job's thread whenever a job stops, however it stops.
+    public void setJobListener(Consumer<Job> listener) {
+        jobListener = listener;
+    }
+
+    // Called from the job's output thread for every node log line.
+    public void setProgressListener(BiConsumer<Job, SolverProgress.Sample> listener) {
+        progressListener = listener;
+    }
+
+    // Whether the solution file header reports an optimal solution, within tolerance for a MIP.
+    // Incumbents written at a time limit or after an error report another status.
+    public static boolean isOptimalSolution(File solFile) {
+        if (!solFile.exists()) {
+            return false;
+        }
+        try (BufferedReader br = new BufferedReader(new FileReader(solFile))) {
+            String line = br.readLine();
+            while (line != null && !line.contains("<quality") && !line.contains("<linearConstraints")) {
+                int start = line.indexOf("solutionStatusValue=\"");
+                if (start >= 0) {
+                    start += "solutionStatusValue=\"".length();
+                    String status = line.substring(start, line.indexOf('"', start));
+                    return status.equals("1") || status.equals("101") || status.equals("102");
+                }
+                line = br.readLine();
+            }
+        } catch (IOException | RuntimeException e) {
+            System.out.println(e.getMessage());
+        }
+        return false;
+    }
+
+    private void writeCommands(File mpsFile, File runDirectory) throws IOException {
+        try (PrintWriter commands = new PrintWriter(new File(runDirectory, COMMANDS_FILE))) {
+            commands.println("set logfile *");
+            if (threadsPerJob > 0) {
+                commands.println("set threads " + threadsPerJob);
+            }
+            if (memoryPerJob > 0) {
+                commands.println("set workmem " + memoryPerJob);
+            }
+            if (timeoutSeconds > 0) {
+                commands.println("set timelimit " + timeoutSeconds);
+            }
+            commands.println("read " + mpsFile.getAbsolutePath());
+            File mipStart = new File(runDirectory, MIPStartWriter.MIP_START_FILE);
+            if (mipStart.exists()) {
+                commands.println("read " + mipStart.getAbsolutePath());
+            }
+            commands.println("opt");
+            commands.println("write " + new File(runDirectory, SOLUTION_FILE).getAbsolutePath());
+            commands.println("quit");
+        }
+    }
+
+    private void run(Job job) {
+        try {
+            runProcess(job);
+        } finally {
+            finish(job);
+        }
+    }
+
+    private void runProcess(Job job) {
+        Process process;
+        synchronized (job) {
+            if (job.status != Status.QUEUED) {
+                return;
+            }
+            String[] arguments = new String[command.length];
+            for (int i = 0; i < command.length; i++) {
+                arguments[i] = command[i].replace("{mps}", job.mpsFile.getAbsolutePath())
+                        .replace("{dir}", job.runDirectory.getAbsolutePath())
+                        .replace("{threads}", Integer.toString(threadsPerJob))
+                        .replace("{memory}", Integer.toString(memoryPerJob))
+                        .replace("{timeout}", Long.toString(timeoutSeconds));
+            }
+            ProcessBuilder pb = new ProcessBuilder(arguments);
+            pb.directory(job.runDirectory);
+            pb.redirectInput(new File(job.runDirectory, COMMANDS_FILE));
+            pb.redirectErrorStream(true);
+            job.startTime = System.currentTimeMillis();
+            try {
+                process = pb.start();
+            } catch (IOException e) {
+                job.status = Status.FAILED;
+                job.message = e.getMessage();
+                return;
+            }
+            job.process = process;
+            job.status = Status.RUNNING;
+        }
+
+        // Copy the output to the log and the progress file as it arrives.
+        Thread output = new Thread(() -> readOutput(job, process), "solver-output");
+        output.setDaemon(true);
+        output.start();
+
+        boolean exited;
+        boolean interrupted = false;
+        try {
+            if (timeoutSeconds > 0) {
+                exited = process.waitFor(timeoutSeconds + killGraceSeconds, TimeUnit.SECONDS);
+            } else {
+                process.waitFor();
+                exited = true;
+            }
+        } catch (InterruptedException e) {
+            exited = false;
+            interrupted = true;
+        }
+
+        synchronized (job) {
+            if (!exited) {
+                stop(process);
+                if (job.status == Status.RUNNING) {
+                    job.status = interrupted ? Status.INTERRUPTED : Status.TIMED_OUT;
+                }
+            }
+            try {
+                job.exitCode = process.exitValue();
+            } catch (IllegalThreadStateException e) {
+                job.message = "Solver did not exit after being killed.";
+            }
+        }
+        if (!interrupted) {
+            try {
+                output.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        synchronized (job) {
+            if (job.status == Status.RUNNING) {
+                job.status = job.exitCode != null && job.exitCode == 0 ? Status.FINISHED : Status.FAILED;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void readOutput(Job job, Process process) {
+        SolverProgress progress = new SolverProgress();
+        try (BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream()));
+                PrintWriter log = new PrintWriter(new FileWriter(new File(job.runDirectory, LOG_FILE)));
+                PrintWriter progressFile = new PrintWriter(new FileWriter(new File(job.runDirectory, SolverProgress.PROGRESS_FILE)))) {
+            progressFile.println(SolverProgress.HEADER);
+            progressFile.flush();
+            String line;
+            while ((line = output.readLine()) != null) {
+                log.println(line);
+                log.flush();
+                SolverProgress.Sample sample = progress.parseLine(line, (System.currentTimeMillis() - job.startTime) / 1000.0);
+                if (sample != null) {
+                    progressFile.println(sample.toCSV());
+                    progressFile.flush();
+                    synchronized (job) {
+                        job.latestSample = sample;
+                    }
+                    if (progressListener != null) {
+                        progressListener.accept(job, sample);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    private void finish(Job job) {
+        synchronized (job) {
+            job.endTime = System.currentTimeMillis();
+        }
+        System.out.println("Solver job " + job.runDirectory.getName() + ": " + job.getStatus() + (job.exitCode != null ? " (exit " + job.exitCode + ")" : "")
+                + (job.message != null ? " " + job.message : ""));
+        if (jobListener != null) {
+            jobListener.accept(job);
+        }
+    }
+
+    // Ask the process to stop, then kill it if it does not. Returns once the process has exited,
+    // keeping any interrupt for the caller.
+    private static void stop(Process process) {
+        process.destroy();
+        boolean interrupted = false;
+        try {
+            if (!process.waitFor(5, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        } catch (InterruptedException e) {
+            interrupted = true;
+            process.destroyForcibly();
+        }
+        while (process.isAlive()) {
+            try {
+                process.waitFor();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // One solve of one MPS file.
+    public static class Job {
+
+        private File mpsFile;
+        private File runDirectory;
+        private Status status = Status.QUEUED;
+        private Integer exitCode;
+        private SolverProgress.Sample latestSample;
+        private String message;
+        private Process process;
+        private Future<?> future;
+        private long startTime;
+        private long endTime;
+
+        private Job(File mpsFile, File runDirectory) {
+            this.mpsFile = mpsFile;
+            this.runDirectory = runDirectory;
+        }
+
+        // Cancel the job, stopping its solver if it is running.
+        public void cancel() {
+            Process running = null;
+            synchronized (this) {
+                if (status == Status.QUEUED) {
+                    status = Status.CANCELLED;
+                } else if (status == Status.RUNNING) {
+                    status = Status.CANCELLED;
+                    running = process;
+                }
+            }
+            if (running != null) {
+                stop(running);
+            }
+        }
+
+        // Wait until the job has stopped.
+        public void waitFor() throws InterruptedException {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                System.out.println(e.getMessage());
+            }
+        }
+
+        public File getMpsFile() {
+            return mpsFile;
+        }
+
+        public File getRunDirectory() {
+            return runDirectory;
+        }
+
+        public synchronized Status getStatus() {
+            return status;
+        }
+
+        // Solver exit status, null if the solver did not run.
+        public synchronized Integer getExitCode() {
+            return exitCode;
+        }
+
+        // Why the solver could not be started, or null.
+        public synchronized String getMessage() {
+            return message;
+        }
+
+        // Last node log line parsed, or null.
+        public synchronized SolverProgress.Sample getLatestSample() {
+            return latestSample;
+        }
+
+        public boolean hasSolution() {
+            return new File(runDirectory, SOLUTION_FILE).exists();
+        }
+
+        // Run time in milliseconds, so far if the job is still running.
+        public synchronized long getElapsedMillis() {
+            if (startTime == 0) {
+                return 0;
+            }
+            return (endTime > 0 ? endTime : System.currentTimeMillis()) - startTime;
+        }
+    }
+}
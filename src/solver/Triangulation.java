@@ -0,0 +1,1040 @@
+package solver;
+
+import dataStore.Edge;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Incremental (Bowyer-Watson) Delaunay triangulation over integer raster
+ * coordinates. Hull edges are closed off with ghost triangles that share a
+ * vertex at infinity, so no super triangle is needed and all predicates are
+ * evaluated exactly.
+ *
+ * The triangulation is kept after it is built: points can be inserted, with
+ * the walk starting from the vertex next to the new point on a Hilbert curve,
+ * and removed, by filling the star of the vertex with the Delaunay triangles
+ * of its neighbors. The pairs each edit adds and removes are collected from
+ * the triangles it touched, until clearChanges is called.
+ *
+ * @author yaw
+ */
+public class Triangulation {
+
+    private static final int INF = -1;  // Vertex at infinity used by ghost triangles
+
+    // Vertices. Removed vertices keep their ids until the triangulation is built again.
+    private int numVertices;
+    private int[] xs;
+    private int[] ys;
+    private int[] cells;
+    private boolean[] vertexDead;
+    private int numDead;
+    private int[] vertexTriangle;   // A triangle at each vertex, a real one where there is one
+    private HashMap<Integer, Integer> cellVertices;
+    private TreeMap<Long, Integer> hilbertVertices; // Vertices by their place on the Hilbert curve
+    private int hilbertShift;
+
+    // Triangles: counterclockwise vertices and the neighbor opposite each vertex.
+    private int numTriangles;
+    private int[] triVertices = new int[0];
+    private int[] triNeighbors = new int[0];
+    private boolean[] triDead = new boolean[0];
+    private int[] freeTriangles = new int[0];
+    private int numFree;
+    private int lastTriangle = -1;
+
+    // Scratch space for insertion.
+    private int[] triMark = new int[0];
+    private int markStamp;
+    private int[] cavity = new int[16];
+    private int[] newTriangles = new int[16];
+    private int[] startAt;  // New triangle whose boundary edge starts at a given vertex
+    private int randomState = 0x2545F491;
+
+    private boolean collinear;  // True when no three points span a triangle
+    private int[] collinearOrder;
+
+    // Pairs added and removed by the edits since the last clearChanges.
+    private boolean trackChanges;
+    private HashSet<Edge> addedPairs = new HashSet<>();
+    private HashSet<Edge> removedPairs = new HashSet<>();
+
+    public Triangulation(int[] pointCells, int[] pointXs, int[] pointYs) {
+        setVertices(pointCells, pointXs, pointYs);
+        build();
+    }
+
+    // Restore a stored triangulation from its vertices and its triangles, given as counterclockwise
+    // cell triples with -1 for the vertex at infinity (see getTriangleCells).
+    public Triangulation(int[] pointCells, int[] pointXs, int[] pointYs, int[] triangleCells) {
+        setVertices(pointCells, pointXs, pointYs);
+        if (triangleCells.length == 0) {
+            setCollinear();
+            return;
+        }
+        int[] triangles = new int[triangleCells.length / 3];
+        for (int t = 0; t < triangles.length; t++) {
+            int[] vertices = new int[3];
+            for (int i = 0; i < 3; i++) {
+                int cell = triangleCells[3 * t + i];
+                vertices[i] = cell < 0 ? INF : cellVertices.get(cell);
+            }
+            triangles[t] = newTriangle(vertices[0], vertices[1], vertices[2]);
+        }
+        linkByEdges(triangles);
+        for (int t : triangles) {
+            setVertexTriangles(t);
+        }
+    }
+
+    // Drop points sharing a cell; they produce the same pairs.
+    private void setVertices(int[] pointCells, int[] pointXs, int[] pointYs) {
+        numVertices = 0;
+        numDead = 0;
+        cellVertices = new HashMap<>();
+        xs = new int[pointCells.length];
+        ys = new int[pointCells.length];
+        cells = new int[pointCells.length];
+        for (int i = 0; i < pointCells.length; i++) {
+            if (!cellVertices.containsKey(pointCells[i])) {
+                cellVertices.put(pointCells[i], numVertices);
+                xs[numVertices] = pointXs[i];
+                ys[numVertices] = pointYs[i];
+                cells[numVertices] = pointCells[i];
+                numVertices++;
+            }
+        }
+        vertexDead = new boolean[numVertices];
+        vertexTriangle = new int[numVertices];
+        Arrays.fill(vertexTriangle, -1);
+        startAt = new int[numVertices + 1];
+
+        numTriangles = 0;
+        triVertices = new int[0];
+        triNeighbors = new int[0];
+        triDead = new boolean[0];
+        triMark = new int[0];
+        numFree = 0;
+        lastTriangle = -1;
+        collinear = false;
+        collinearOrder = null;
+
+        int maxCoordinate = 1;
+        for (int i = 0; i < numVertices; i++) {
+            maxCoordinate = Math.max(maxCoordinate, Math.max(xs[i], ys[i]));
+        }
+        hilbertShift = Math.max(0, 32 - Integer.numberOfLeadingZeros(maxCoordinate) - 16);
+        hilbertVertices = new TreeMap<>();
+        for (int i = 0; i < numVertices; i++) {
+            hilbertVertices.put(hilbertKey(i), i);
+        }
+    }
+
+    // Get the Delaunay pairs, including every chord of cocircular point sets.
+    public HashSet<Edge> getPairs() {
+        HashSet<Edge> pairs = new HashSet<>();
+        if (collinear) {
+            for (int i = 0; i < collinearOrder.length - 1; i++) {
+                pairs.add(new Edge(cells[collinearOrder[i]], cells[collinearOrder[i + 1]]));
+            }
+            return pairs;
+        }
+
+        // Triangle edges.
+        for (int t = 0; t < numTriangles; t++) {
+            if (!triDead[t] && !isGhost(t)) {
+                for (int i = 0; i < 3; i++) {
+                    pairs.add(new Edge(cells[triVertices[3 * t + i]], cells[triVertices[3 * t + (i + 1) % 3]]));
+                }
+            }
+        }
+
+        // Group triangles sharing a circumcircle and connect every pair within a group.
+        int[] parent = new int[numTriangles];
+        for (int t = 0; t < numTriangles; t++) {
+            parent[t] = t;
+        }
+        boolean cocircular = false;
+        for (int t = 0; t < numTriangles; t++) {
+            if (triDead[t] || isGhost(t)) {
+                continue;
+            }
+            for (int i = 0; i < 3; i++) {
+                int nb = triNeighbors[3 * t + i];
+                if (nb > t && !isGhost(nb) && inCircle(t, oppositeVertex(nb, t)) == 0) {
+                    parent[find(parent, nb)] = find(parent, t);
+                    cocircular = true;
+                }
+            }
+        }
+        if (cocircular) {
+            HashMap<Integer, HashSet<Integer>> groups = new HashMap<>();
+            for (int t = 0; t < numTriangles; t++) {
+                if (!triDead[t] && !isGhost(t)) {
+                    int root = find(parent, t);
+                    if (!groups.containsKey(root)) {
+                        groups.put(root, new HashSet<>());
+                    }
+                    for (int i = 0; i < 3; i++) {
+                        groups.get(root).add(triVertices[3 * t + i]);
+                    }
+                }
+            }
+            for (HashSet<Integer> group : groups.values()) {
+                if (group.size() > 3) {
+                    Integer[] members = group.toArray(new Integer[0]);
+                    for (int i = 0; i < members.length; i++) {
+                        for (int j = i + 1; j < members.length; j++) {
+                            pairs.add(new Edge(cells[members[i]], cells[members[j]]));
+                        }
+                    }
+                }
+            }
+        }
+        return pairs;
+    }
+
+    public int getNumVertices() {
+        return numVertices - numDead;
+    }
+
+    public boolean contains(int cell) {
+        return cellVertices.containsKey(cell);
+    }
+
+    // Cells of the vertices, with their raster coordinates in getVertexXs and getVertexYs.
+    public int[] getVertexCells() {
+        return liveValues(cells);
+    }
+
+    public int[] getVertexXs() {
+        return liveValues(xs);
+    }
+
+    public int[] getVertexYs() {
+        return liveValues(ys);
+    }
+
+    private int[] liveValues(int[] values) {
+        int[] live = new int[getNumVertices()];
+        int n = 0;
+        for (int v = 0; v < numVertices; v++) {
+            if (!vertexDead[v]) {
+                live[n++] = values[v];
+            }
+        }
+        return live;
+    }
+
+    // Triangles, ghosts included, as counterclockwise cell triples with -1 for the vertex at
+    // infinity. Empty when the points are collinear.
+    public int[] getTriangleCells() {
+        if (collinear) {
+            return new int[0];
+        }
+        int[] triangleCells = new int[3 * (numTriangles - numFree)];
+        int n = 0;
+        for (int t = 0; t < numTriangles; t++) {
+            if (!triDead[t]) {
+                for (int i = 0; i < 3; i++) {
+                    int v = triVertices[3 * t + i];
+                    triangleCells[n++] = v == INF ? -1 : cells[v];
+                }
+            }
+        }
+        return triangleCells;
+    }
+
+    // Pairs added by the edits since the last clearChanges.
+    public HashSet<Edge> getAddedPairs() {
+        return addedPairs;
+    }
+
+    // Pairs removed by the edits since the last clearChanges.
+    public HashSet<Edge> getRemovedPairs() {
+        return removedPairs;
+    }
+
+    public void clearChanges() {
+        addedPairs = new HashSet<>();
+        removedPairs = new HashSet<>();
+    }
+
+    // Insert the point of a cell. The walk to the point starts at the vertex before it on the
+    // Hilbert curve, which for points spread over the raster is a few triangles away. Returns
+    // false if the cell is a vertex already.
+    public boolean insert(int cell, int x, int y) {
+        if (cellVertices.containsKey(cell)) {
+            return false;
+        }
+        if (collinear) {
+            HashSet<Edge> before = getPairs();
+            addVertex(cell, x, y);
+            rebuild();
+            recordChanges(before, getPairs());
+            return true;
+        }
+
+        int p = addVertex(cell, x, y);
+        Map.Entry<Long, Integer> near = hilbertVertices.lowerEntry(hilbertKey(p));
+        if (near == null) {
+            near = hilbertVertices.higherEntry(hilbertKey(p));
+        }
+        int start = vertexTriangle[near.getValue()];
+        if (start >= 0 && !triDead[start] && !isGhost(start)) {
+            lastTriangle = start;
+        }
+        trackChanges = true;
+        boolean inserted = insertVertex(p);
+        trackChanges = false;
+        if (!inserted) {
+            killVertex(p);
+        }
+        return inserted;
+    }
+
+    // Remove the point of a cell. Only the star of its vertex is filled again, unless the points
+    // left are too few or collinear, when the triangulation is built again. Returns false if the
+    // cell is not a vertex.
+    public boolean remove(int cell) {
+        Integer p = cellVertices.get(cell);
+        if (p == null) {
+            return false;
+        }
+        if (!collinear && getNumVertices() > 3) {
+            trackChanges = true;
+            boolean removed = removeVertex(p);
+            trackChanges = false;
+            if (removed) {
+                return true;
+            }
+        }
+        HashSet<Edge> before = getPairs();
+        killVertex(p);
+        rebuild();
+        recordChanges(before, getPairs());
+        return true;
+    }
+
+    private int addVertex(int cell, int x, int y) {
+        if (numVertices == xs.length) {
+            int capacity = Math.max(4, numVertices * 2);
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+            cells = Arrays.copyOf(cells, capacity);
+            vertexDead = Arrays.copyOf(vertexDead, capacity);
+            vertexTriangle = Arrays.copyOf(vertexTriangle, capacity);
+            startAt = new int[capacity + 1];
+        }
+        int v = numVertices++;
+        xs[v] = x;
+        ys[v] = y;
+        cells[v] = cell;
+        vertexDead[v] = false;
+        vertexTriangle[v] = -1;
+        cellVertices.put(cell, v);
+        hilbertVertices.put(hilbertKey(v), v);
+        return v;
+    }
+
+    private void killVertex(int v) {
+        vertexDead[v] = true;
+        numDead++;
+        vertexTriangle[v] = -1;
+        cellVertices.remove(cells[v]);
+        hilbertVertices.remove(hilbertKey(v));
+    }
+
+    // Build again over the vertices left, renumbering them.
+    private void rebuild() {
+        int[] liveCells = getVertexCells();
+        int[] liveXs = getVertexXs();
+        int[] liveYs = getVertexYs();
+        setVertices(liveCells, liveXs, liveYs);
+        build();
+    }
+
+    private void build() {
+        if (numVertices < 3) {
+            setCollinear();
+            return;
+        }
+
+        // Insert along a Hilbert curve so each walk starts next to the new point.
+        int[] order = hilbertOrder();
+
+        int first = order[0];
+        int second = order[1];
+        int third = -1;
+        for (int i = 2; i < order.length; i++) {
+            if (orient(first, second, order[i]) != 0) {
+                third = i;
+                break;
+            }
+        }
+        if (third < 0) {
+            setCollinear();
+            return;
+        }
+
+        int thirdVertex = order[third];
+        if (orient(first, second, thirdVertex) > 0) {
+            initialize(first, second, thirdVertex);
+        } else {
+            initialize(first, thirdVertex, second);
+        }
+
+        for (int i = 2; i < order.length; i++) {
+            if (i != third) {
+                insertVertex(order[i]);
+            }
+        }
+    }
+
+    private void setCollinear() {
+        collinear = true;
+        Integer[] order = new Integer[numVertices];
+        for (int i = 0; i < numVertices; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> xs[a] != xs[b] ? Integer.compare(xs[a], xs[b]) : Integer.compare(ys[a], ys[b]));
+        collinearOrder = new int[numVertices];
+        for (int i = 0; i < numVertices; i++) {
+            collinearOrder[i] = order[i];
+        }
+    }
+
+    private void initialize(int a, int b, int c) {
+        int t = newTriangle(a, b, c);
+        int g1 = newTriangle(b, a, INF);
+        int g2 = newTriangle(c, b, INF);
+        int g3 = newTriangle(a, c, INF);
+        linkByEdges(new int[]{t, g1, g2, g3});
+        setVertexTriangles(t);
+    }
+
+    // Set neighbors of the given triangles by matching opposite directed edges.
+    private void linkByEdges(int[] triangles) {
+        HashMap<Long, Integer> edgeToTriangle = new HashMap<>();
+        for (int t : triangles) {
+            for (int i = 0; i < 3; i++) {
+                edgeToTriangle.put(edgeKey(triVertices[3 * t + (i + 1) % 3], triVertices[3 * t + (i + 2) % 3]), t);
+            }
+        }
+        for (int t : triangles) {
+            for (int i = 0; i < 3; i++) {
+                Integer nb = edgeToTriangle.get(edgeKey(triVertices[3 * t + (i + 2) % 3], triVertices[3 * t + (i + 1) % 3]));
+                if (nb != null) {
+                    triNeighbors[3 * t + i] = nb;
+                }
+            }
+        }
+    }
+
+    private static long edgeKey(int u, int w) {
+        return ((long) (u + 1) << 32) | (w + 1);
+    }
+
+    // Insert vertex p. Returns false if it coincides with an existing vertex.
+    private boolean insertVertex(int p) {
+        int start = locate(p);
+        if (start < 0) {
+            return false;
+        }
+
+        // Collect all triangles whose circumcircle contains p.
+        markStamp++;
+        int numCavity = 0;
+        cavity[numCavity++] = start;
+        triMark[start] = markStamp;
+        for (int c = 0; c < numCavity; c++) {
+            int t = cavity[c];
+            for (int i = 0; i < 3; i++) {
+                int nb = triNeighbors[3 * t + i];
+                if (triMark[nb] != markStamp && inConflict(nb, p)) {
+                    triMark[nb] = markStamp;
+                    if (numCavity == cavity.length) {
+                        cavity = Arrays.copyOf(cavity, numCavity * 2);
+                    }
+                    cavity[numCavity++] = nb;
+                }
+            }
+        }
+
+        HashSet<Integer> regionBefore = null;
+        HashSet<Edge> pairsBefore = null;
+        if (trackChanges) {
+            ArrayList<Integer> seeds = new ArrayList<>();
+            for (int c = 0; c < numCavity; c++) {
+                seeds.add(cavity[c]);
+                for (int i = 0; i < 3; i++) {
+                    seeds.add(triNeighbors[3 * cavity[c] + i]);
+                }
+            }
+            regionBefore = new HashSet<>();
+            pairsBefore = regionPairs(seeds, null, regionBefore);
+        }
+
+        // Connect p to each boundary edge of the cavity.
+        int numNew = 0;
+        for (int c = 0; c < numCavity; c++) {
+            int t = cavity[c];
+            for (int i = 0; i < 3; i++) {
+                int outside = triNeighbors[3 * t + i];
+                if (triMark[outside] != markStamp) {
+                    int u = triVertices[3 * t + (i + 1) % 3];
+                    int w = triVertices[3 * t + (i + 2) % 3];
+                    int n = newTriangle(u, w, p);
+                    triNeighbors[3 * n + 2] = outside;
+                    for (int j = 0; j < 3; j++) {
+                        if (triNeighbors[3 * outside + j] == t) {
+                            triNeighbors[3 * outside + j] = n;
+                        }
+                    }
+                    startAt[u == INF ? numVertices : u] = n;
+                    if (numNew == newTriangles.length) {
+                        newTriangles = Arrays.copyOf(newTriangles, numNew * 2);
+                    }
+                    newTriangles[numNew++] = n;
+                }
+            }
+        }
+        for (int k = 0; k < numNew; k++) {
+            int n = newTriangles[k];
+            int w = triVertices[3 * n + 1];
+            int next = startAt[w == INF ? numVertices : w];
+            triNeighbors[3 * n] = next;
+            triNeighbors[3 * next + 1] = n;
+            setVertexTriangles(n);
+        }
+
+        HashSet<Integer> cavityTriangles = trackChanges ? new HashSet<>() : null;
+        for (int c = 0; c < numCavity; c++) {
+            deleteTriangle(cavity[c]);
+            if (trackChanges) {
+                cavityTriangles.add(cavity[c]);
+            }
+        }
+        if (trackChanges) {
+            recordLocalChanges(regionBefore, pairsBefore, cavityTriangles, Arrays.copyOf(newTriangles, numNew));
+        }
+        return true;
+    }
+
+    // Remove vertex p by filling its star with the triangles of the Delaunay triangulation of its
+    // neighbors that lie inside the star. Returns false, leaving the triangulation unchanged, if
+    // the neighbors are collinear or the fill does not match the star (possible with cocircular
+    // points).
+    private boolean removeVertex(int p) {
+        int first = vertexTriangle[p];
+        if (first < 0 || triDead[first] || vertexIndex(first, p) < 0) {
+            return false;
+        }
+
+        // Triangles around p, its neighbors and the triangles bordering the star.
+        ArrayList<Integer> star = new ArrayList<>();
+        HashSet<Integer> starTriangles = new HashSet<>();
+        star.add(first);
+        starTriangles.add(first);
+        for (int s = 0; s < star.size(); s++) {
+            int t = star.get(s);
+            for (int i = 0; i < 3; i++) {
+                int nb = triNeighbors[3 * t + i];
+                if (!starTriangles.contains(nb) && vertexIndex(nb, p) >= 0) {
+                    star.add(nb);
+                    starTriangles.add(nb);
+                }
+            }
+        }
+        LinkedHashSet<Integer> link = new LinkedHashSet<>();
+        LinkedHashSet<Integer> outside = new LinkedHashSet<>();
+        boolean onHull = false;
+        for (int t : star) {
+            onHull |= isGhost(t);
+            for (int i = 0; i < 3; i++) {
+                int v = triVertices[3 * t + i];
+                if (v != p && v != INF) {
+                    link.add(v);
+                }
+                if (!starTriangles.contains(triNeighbors[3 * t + i])) {
+                    outside.add(triNeighbors[3 * t + i]);
+                }
+            }
+        }
+
+        Integer[] linkVertices = link.toArray(new Integer[0]);
+        int[] linkCells = new int[linkVertices.length];
+        int[] linkXs = new int[linkVertices.length];
+        int[] linkYs = new int[linkVertices.length];
+        for (int i = 0; i < linkVertices.length; i++) {
+            linkCells[i] = cells[linkVertices[i]];
+            linkXs[i] = xs[linkVertices[i]];
+            linkYs[i] = ys[linkVertices[i]];
+        }
+        Triangulation fill = new Triangulation(linkCells, linkXs, linkYs);
+        if (fill.collinear) {
+            return false;
+        }
+
+        // Triangles of the fill inside the star, by their centroids.
+        ArrayList<int[]> kept = new ArrayList<>();
+        HashSet<Long> keptEdges = new HashSet<>();
+        long keptArea = 0;
+        for (int t = 0; t < fill.numTriangles; t++) {
+            if (fill.triDead[t] || fill.isGhost(t)) {
+                continue;
+            }
+            int a = linkVertices[fill.triVertices[3 * t]];
+            int b = linkVertices[fill.triVertices[3 * t + 1]];
+            int c = linkVertices[fill.triVertices[3 * t + 2]];
+            long centroidX = (long) xs[a] + xs[b] + xs[c];
+            long centroidY = (long) ys[a] + ys[b] + ys[c];
+            for (int s : star) {
+                if (!isGhost(s) && containsScaled(s, centroidX, centroidY)) {
+                    kept.add(new int[]{a, b, c});
+                    keptEdges.add(edgeKey(a, b));
+                    keptEdges.add(edgeKey(b, c));
+                    keptEdges.add(edgeKey(c, a));
+                    keptArea += area(a, b, c);
+                    break;
+                }
+            }
+        }
+
+        // The fill has to meet every edge of the star opposite p from the same side, and cover the
+        // star of an interior vertex.
+        long starArea = 0;
+        HashSet<Long> borderEdges = new HashSet<>();
+        for (int t : star) {
+            int i = vertexIndex(t, p);
+            int u = triVertices[3 * t + (i + 1) % 3];
+            int w = triVertices[3 * t + (i + 2) % 3];
+            if (!isGhost(t)) {
+                starArea += area(triVertices[3 * t], triVertices[3 * t + 1], triVertices[3 * t + 2]);
+                if (!keptEdges.contains(edgeKey(u, w))) {
+                    return false;
+                }
+                borderEdges.add(edgeKey(u, w));
+            }
+        }
+        if (!onHull && keptArea != starArea) {
+            return false;
+        }
+
+        // On the hull, fill edges with nothing beyond them are the new hull edges.
+        ArrayList<int[]> ghosts = new ArrayList<>();
+        for (int[] triangle : kept) {
+            for (int i = 0; i < 3; i++) {
+                int u = triangle[i];
+                int w = triangle[(i + 1) % 3];
+                if (!keptEdges.contains(edgeKey(w, u)) && !borderEdges.contains(edgeKey(u, w))) {
+                    if (!onHull) {
+                        return false;
+                    }
+                    ghosts.add(new int[]{w, u, INF});
+                }
+            }
+        }
+
+        // Every directed edge of the new triangles has to meet one going back, and every edge of
+        // the outside triangles facing the star has to meet a new triangle.
+        HashSet<Long> newEdges = new HashSet<>();
+        ArrayList<int[]> created = new ArrayList<>(kept);
+        created.addAll(ghosts);
+        for (int[] triangle : created) {
+            for (int i = 0; i < 3; i++) {
+                newEdges.add(edgeKey(triangle[i], triangle[(i + 1) % 3]));
+            }
+        }
+        HashSet<Long> outsideEdges = new HashSet<>();
+        for (int t : outside) {
+            for (int i = 0; i < 3; i++) {
+                long key = edgeKey(triVertices[3 * t + (i + 1) % 3], triVertices[3 * t + (i + 2) % 3]);
+                outsideEdges.add(key);
+                if (starTriangles.contains(triNeighbors[3 * t + i])
+                        && !newEdges.contains(edgeKey(triVertices[3 * t + (i + 2) % 3], triVertices[3 * t + (i + 1) % 3]))) {
+                    return false;
+                }
+            }
+        }
+        for (long key : newEdges) {
+            long back = (key << 32) | (key >>> 32);
+            if (!newEdges.contains(back) && !outsideEdges.contains(back)) {
+                return false;
+            }
+        }
+
+        HashSet<Integer> regionBefore = null;
+        HashSet<Edge> pairsBefore = null;
+        if (trackChanges) {
+            ArrayList<Integer> seeds = new ArrayList<>(star);
+            seeds.addAll(outside);
+            regionBefore = new HashSet<>();
+            pairsBefore = regionPairs(seeds, null, regionBefore);
+        }
+
+        // Replace the star.
+        int[] createdTriangles = new int[created.size()];
+        for (int n = 0; n < createdTriangles.length; n++) {
+            int[] triangle = created.get(n);
+            createdTriangles[n] = newTriangle(triangle[0], triangle[1], triangle[2]);
+        }
+        for (int t : star) {
+            deleteTriangle(t);
+        }
+        int[] linked = Arrays.copyOf(createdTriangles, createdTriangles.length + outside.size());
+        int n = createdTriangles.length;
+        for (int t : outside) {
+            linked[n++] = t;
+        }
+        linkByEdges(linked);
+        for (int t : linked) {
+            setVertexTriangles(t);
+        }
+        killVertex(p);
+
+        if (trackChanges) {
+            recordLocalChanges(regionBefore, pairsBefore, starTriangles, createdTriangles);
+        }
+        return true;
+    }
+
+    // Point at three times the given coordinates against the closed counterclockwise triangle t.
+    private boolean containsScaled(int t, long scaledX, long scaledY) {
+        for (int i = 0; i < 3; i++) {
+            int a = triVertices[3 * t + i];
+            int b = triVertices[3 * t + (i + 1) % 3];
+            long det = 3L * (xs[b] - xs[a]) * (scaledY - 3L * ys[a]) - 3L * (ys[b] - ys[a]) * (scaledX - 3L * xs[a]);
+            if (det < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Twice the signed area of triangle a, b, c.
+    private long area(int a, int b, int c) {
+        return (long) (xs[b] - xs[a]) * (ys[c] - ys[a]) - (long) (ys[b] - ys[a]) * (xs[c] - xs[a]);
+    }
+
+    private int vertexIndex(int t, int v) {
+        for (int i = 0; i < 3; i++) {
+            if (triVertices[3 * t + i] == v) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Point the vertices of a real triangle at it, so walks and removals can start there.
+    private void setVertexTriangles(int t) {
+        if (triDead[t] || isGhost(t)) {
+            return;
+        }
+        for (int i = 0; i < 3; i++) {
+            vertexTriangle[triVertices[3 * t + i]] = t;
+        }
+        lastTriangle = t;
+    }
+
+    // Record the pairs an edit changed. The cavity triangles were replaced by the created ones, and
+    // pairsBefore are the pairs of regionBefore, the triangles around the cavity and their
+    // cocircular groups, before the edit.
+    private void recordLocalChanges(HashSet<Integer> regionBefore, HashSet<Edge> pairsBefore, HashSet<Integer> cavityTriangles, int[] created) {
+        HashSet<Integer> createdTriangles = new HashSet<>();
+        ArrayList<Integer> seeds = new ArrayList<>();
+        for (int t : created) {
+            createdTriangles.add(t);
+            seeds.add(t);
+        }
+        for (int t : regionBefore) {
+            if (!cavityTriangles.contains(t) && !createdTriangles.contains(t)) {
+                seeds.add(t);
+            }
+        }
+        HashSet<Integer> regionAfter = new HashSet<>();
+        HashSet<Edge> pairsAfter = regionPairs(seeds, null, regionAfter);
+
+        // Triangles reached only now, through a group a new triangle joined: their groups did not
+        // touch the cavity before, so they were the same groups without the new triangles.
+        ArrayList<Integer> reached = new ArrayList<>();
+        for (int t : regionAfter) {
+            if (!regionBefore.contains(t) && !createdTriangles.contains(t)) {
+                reached.add(t);
+            }
+        }
+        pairsBefore.addAll(regionPairs(reached, createdTriangles, new HashSet<>()));
+        recordChanges(pairsBefore, pairsAfter);
+    }
+
+    private void recordChanges(HashSet<Edge> pairsBefore, HashSet<Edge> pairsAfter) {
+        for (Edge pair : pairsBefore) {
+            if (!pairsAfter.contains(pair) && !addedPairs.remove(pair)) {
+                removedPairs.add(pair);
+            }
+        }
+        for (Edge pair : pairsAfter) {
+            if (!pairsBefore.contains(pair) && !removedPairs.remove(pair)) {
+                addedPairs.add(pair);
+            }
+        }
+    }
+
+    // Pairs made by the real triangles among the seeds and the cocircular groups they belong to,
+    // as in getPairs. Triangles in excluded are left out of the groups; the triangles reached are
+    // added to visited.
+    private HashSet<Edge> regionPairs(ArrayList<Integer> seeds, HashSet<Integer> excluded, HashSet<Integer> visited) {
+        HashSet<Edge> pairs = new HashSet<>();
+        ArrayList<Integer> group = new ArrayList<>();
+        HashSet<Integer> members = new HashSet<>();
+        for (int seed : seeds) {
+            if (triDead[seed] || isGhost(seed) || visited.contains(seed) || (excluded != null && excluded.contains(seed))) {
+                continue;
+            }
+            group.clear();
+            members.clear();
+            group.add(seed);
+            visited.add(seed);
+            for (int g = 0; g < group.size(); g++) {
+                int t = group.get(g);
+                for (int i = 0; i < 3; i++) {
+                    members.add(triVertices[3 * t + i]);
+                    pairs.add(new Edge(cells[triVertices[3 * t + i]], cells[triVertices[3 * t + (i + 1) % 3]]));
+                    int nb = triNeighbors[3 * t + i];
+                    if (!visited.contains(nb) && !triDead[nb] && !isGhost(nb) && (excluded == null || !excluded.contains(nb))
+                            && inCircle(t, oppositeVertex(nb, t)) == 0) {
+                        visited.add(nb);
+                        group.add(nb);
+                    }
+                }
+            }
+            if (members.size() > 3) {
+                Integer[] groupMembers = members.toArray(new Integer[0]);
+                for (int i = 0; i < groupMembers.length; i++) {
+                    for (int j = i + 1; j < groupMembers.length; j++) {
+                        pairs.add(new Edge(cells[groupMembers[i]], cells[groupMembers[j]]));
+                    }
+                }
+            }
+        }
+        return pairs;
+    }
+
+    // Walk towards p and return a triangle in conflict with it, or -1 for a duplicate point.
+    private int locate(int p) {
+        int t = lastTriangle;
+        if (triDead[t] || isGhost(t)) {
+            t = firstRealTriangle();
+        }
+        boolean moved = true;
+        while (moved) {
+            moved = false;
+            int offset = nextRandom() % 3;
+            for (int k = 0; k < 3; k++) {
+                int i = (k + offset) % 3;
+                int u = triVertices[3 * t + (i + 1) % 3];
+                int w = triVertices[3 * t + (i + 2) % 3];
+                if (orient(u, w, p) < 0) {
+                    t = triNeighbors[3 * t + i];
+                    if (isGhost(t)) {
+                        return t;
+                    }
+                    moved = true;
+                    break;
+                }
+            }
+        }
+        for (int i = 0; i < 3; i++) {
+            int v = triVertices[3 * t + i];
+            if (xs[v] == xs[p] && ys[v] == ys[p]) {
+                return -1;
+            }
+        }
+        return t;
+    }
+
+    private int firstRealTriangle() {
+        for (int t = 0; t < numTriangles; t++) {
+            if (!triDead[t] && !isGhost(t)) {
+                return t;
+            }
+        }
+        return -1;
+    }
+
+    private boolean inConflict(int t, int p) {
+        int inf = ghostIndex(t);
+        if (inf < 0) {
+            return inCircle(t, p) > 0;
+        }
+        int u = triVertices[3 * t + (inf + 1) % 3];
+        int w = triVertices[3 * t + (inf + 2) % 3];
+        int o = orient(u, w, p);
+        if (o != 0) {
+            return o > 0;
+        }
+        // Collinear with the hull edge: only conflicts strictly inside the segment.
+        long dot = (long) (xs[p] - xs[u]) * (xs[w] - xs[u]) + (long) (ys[p] - ys[u]) * (ys[w] - ys[u]);
+        long length = (long) (xs[w] - xs[u]) * (xs[w] - xs[u]) + (long) (ys[w] - ys[u]) * (ys[w] - ys[u]);
+        return dot > 0 && dot < length;
+    }
+
+    private int newTriangle(int a, int b, int c) {
+        int t;
+        if (numFree > 0) {
+            t = freeTriangles[--numFree];
+        } else {
+            if (numTriangles == triDead.length) {
+                int capacity = Math.max(16, numTriangles * 2);
+                triVertices = Arrays.copyOf(triVertices, capacity * 3);
+                triNeighbors = Arrays.copyOf(triNeighbors, capacity * 3);
+                triDead = Arrays.copyOf(triDead, capacity);
+                triMark = Arrays.copyOf(triMark, capacity);
+            }
+            t = numTriangles++;
+        }
+        triVertices[3 * t] = a;
+        triVertices[3 * t + 1] = b;
+        triVertices[3 * t + 2] = c;
+        triDead[t] = false;
+        triMark[t] = 0;
+        return t;
+    }
+
+    private void deleteTriangle(int t) {
+        triDead[t] = true;
+        if (numFree == freeTriangles.length) {
+            freeTriangles = Arrays.copyOf(freeTriangles, Math.max(16, numFree * 2));
+        }
+        freeTriangles[numFree++] = t;
+    }
+
+    private boolean isGhost(int t) {
+        return ghostIndex(t) >= 0;
+    }
+
+    private int ghostIndex(int t) {
+        for (int i = 0; i < 3; i++) {
+            if (triVertices[3 * t + i] == INF) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Vertex of triangle t that is not shared with its neighbor nb.
+    private int oppositeVertex(int t, int nb) {
+        for (int j = 0; j < 3; j++) {
+            if (triNeighbors[3 * t + j] == nb) {
+                return triVertices[3 * t + j];
+            }
+        }
+        return INF;
+    }
+
+    private static int find(int[] parent, int t) {
+        while (parent[t] != t) {
+            parent[t] = parent[parent[t]];
+            t = parent[t];
+        }
+        return t;
+    }
+
+    private int nextRandom() {
+        randomState ^= randomState << 13;
+        randomState ^= randomState >>> 17;
+        randomState ^= randomState << 5;
+        return randomState & Integer.MAX_VALUE;
+    }
+
+    // Sign of the turn a->b->p: +1 counterclockwise, -1 clockwise, 0 collinear.
+    private int orient(int a, int b, int p) {
+        long det = (long) (xs[b] - xs[a]) * (ys[p] - ys[a]) - (long) (ys[b] - ys[a]) * (xs[p] - xs[a]);
+        return Long.signum(det);
+    }
+
+    // Sign of p against the circumcircle of counterclockwise triangle t: +1 inside, -1 outside, 0 on it.
+    private int inCircle(int t, int p) {
+        int a = triVertices[3 * t];
+        int b = triVertices[3 * t + 1];
+        int c = triVertices[3 * t + 2];
+        double adx = xs[a] - xs[p];
+        double ady = ys[a] - ys[p];
+        double bdx = xs[b] - xs[p];
+        double bdy = ys[b] - ys[p];
+        double cdx = xs[c] - xs[p];
+        double cdy = ys[c] - ys[p];
+
+        double abdet = adx * bdy - bdx * ady;
+        double bcdet = bdx * cdy - cdx * bdy;
+        double cadet = cdx * ady - adx * cdy;
+        double alift = adx * adx + ady * ady;
+        double blift = bdx * bdx + bdy * bdy;
+        double clift = cdx * cdx + cdy * cdy;
+        double det = alift * bcdet + blift * cadet + clift * abdet;
+
+        // Trust the floating point sign unless it is within rounding error of zero.
+        double permanent = alift * (Math.abs(bdx * cdy) + Math.abs(cdx * bdy))
+                + blift * (Math.abs(cdx * ady) + Math.abs(adx * cdy))
+                + clift * (Math.abs(adx * bdy) + Math.abs(bdx * ady));
+        if (Math.abs(det) > permanent * 1e-12) {
+            return det > 0 ? 1 : -1;
+        }
+
+        BigInteger[] d = new BigInteger[]{
+            BigInteger.valueOf(xs[a] - xs[p]), BigInteger.valueOf(ys[a] - ys[p]),
+            BigInteger.valueOf(xs[b] - xs[p]), BigInteger.valueOf(ys[b] - ys[p]),
+            BigInteger.valueOf(xs[c] - xs[p]), BigInteger.valueOf(ys[c] - ys[p])};
+        BigInteger exactAb = d[0].multiply(d[3]).subtract(d[2].multiply(d[1]));
+        BigInteger exactBc = d[2].multiply(d[5]).subtract(d[4].multiply(d[3]));
+        BigInteger exactCa = d[4].multiply(d[1]).subtract(d[0].multiply(d[5]));
+        BigInteger exactA = d[0].multiply(d[0]).add(d[1].multiply(d[1]));
+        BigInteger exactB = d[2].multiply(d[2]).add(d[3].multiply(d[3]));
+        BigInteger exactC = d[4].multiply(d[4]).add(d[5].multiply(d[5]));
+        return exactA.multiply(exactBc).add(exactB.multiply(exactCa)).add(exactC.multiply(exactAb)).signum();
+    }
+
+    // Order vertices along a Hilbert curve over the raster.
+    private int[] hilbertOrder() {
+        int[] order = new int[numVertices];
+        int i = 0;
+        for (int v : hilbertVertices.values()) {
+            order[i++] = v;
+        }
+        return order;
+    }
+
+    // Place of a vertex on the Hilbert curve, ties broken by vertex id. Points inserted later
+    // beyond the raster the curve was scaled to are clamped to its edge.
+    private long hilbertKey(int v) {
+        int x = Math.min(xs[v] >> hilbertShift, (1 << 16) - 1);
+        int y = Math.min(ys[v] >> hilbertShift, (1 << 16) - 1);
+        return (hilbertIndex(x, y) << 31) | v;
+    }
+
+    private static long hilbertIndex(int x, int y) {
+        int n = 1 << 16;
+        long d = 0;
+        for (int s = n / 2; s > 0; s >>= 1) {
+            int rx = (x & s) > 0 ? 1 : 0;
+            int ry = (y & s) > 0 ? 1 : 0;
+            d += (long) s * s * ((3 * rx) ^ ry);
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = n - 1 - x;
+                    y = n - 1 - y;
+                }
+                int temp = x;
+                x = y;
+                y = temp;
+            }
+        }
+        return d;
+    }
+}
@@ -0,0 +1,82 @@
+package utilities;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256 over a sequence of primitive values, used to tag generated files
+ * with a hash of their content so unchanged inputs can be detected.
+ *
+ * @author yaw
+ */
+public class ContentHash {
+
+    private MessageDigest digest;
+    private ByteBuffer buffer = ByteBuffer.allocate(1 << 13);
+
+    public ContentHash() {
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public ContentHash add(int value) {
+        reserve(4);
+        buffer.putInt(value);
+        return this;
+    }
+
+    public ContentHash add(long value) {
+        reserve(8);
+        buffer.putLong(value);
+        return this;
+    }
+
+    public ContentHash add(double value) {
+        return add(Double.doubleToLongBits(value));
+    }
+
+    public ContentHash add(boolean value) {
+        reserve(1);
+        buffer.put((byte) (value ? 1 : 0));
+        return this;
+    }
+
+    // Strings are length prefixed so neighboring values cannot run together; null differs from "".
+    public ContentHash add(String value) {
+        if (value == null) {
+            return add(-1);
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        add(bytes.length);
+        flush();
+        digest.update(bytes);
+        return this;
+    }
+
+    // Hex digest; the hash cannot be added to afterwards.
+    public String toHex() {
+        flush();
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    private void reserve(int bytes) {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+
+    private void flush() {
+        buffer.flip();
+        digest.update(buffer);
+        buffer.clear();
+    }
+}